@@ -1,8 +1,25 @@
 package client;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.function.IntFunction;
 
 /*
  * class Client
@@ -16,7 +33,21 @@ import java.util.Scanner;
  * 4. Wrong protocol version 
  */
 public class Client {
-	static int resendCount = 1; //Number of times the request is resent. Used when response code received is 1 (integrity check failure).
+	static boolean resumableDownloads = false; //Set by the "resume" argument. Files are then downloaded in byte ranges.
+	static int rangeLength = 0; //Number of bytes asked for in one range request. 0 for as many as fit in one packet.
+	public static Callable<DatagramSocket> socketFactory = null; //Opens the client sockets instead of new DatagramSocket(), e.g. SimulatedNetwork::open in tests. null for UDP sockets.
+	static byte[] datagramBuffer = new byte[ClientServerUtility.MAX_UDP_PAYLOAD]; //Reused by receiveDatagram() and receiveResponseFromServer(). Responses which are not packetized can be larger than one packet.
+	static final int MAX_MISSING_RANGES = 16; //Largest number of missing ranges in one batch request. At most 20 bytes each, so the request fits in the smallest packet.
+	static Map<String, ByteArrayOutputStream> partialDownloads = new HashMap<String, ByteArrayOutputStream>(); //Bytes received so far of unfinished downloads, by file name
+	static final long NO_RESPONSE = -1, FILE_CHANGED = -2, ERROR_RESPONSE = -3; //Results of receiveRanges() when the file is not complete
+	static boolean streamToDisk = false; //Set by the "stream" argument. Files are then written to the download folder range by range.
+	static String downloadFolder = "downloads"; //Folder of the files downloaded with streamToDisk
+	static Map<String, String> partialValidators = new HashMap<String, String>(); //Validator of the file when the unfinished download started, by file name
+	static boolean cachedDownloads = false; //Set by the "cache" argument. Files are then kept in the cache folder and only fetched again if they changed.
+	static String cacheFolder = "cache"; //Folder of the local copies of received files
+	static String requestPriority = null; //Set by the "priority=high|normal|low" argument. null if it is not sent.
+	static String integrityAlgorithm = null; //Set by the "crc32c" argument for all the requests. null for the 16 bit checksum of ENTS/1.0.
+	static boolean sendTimeout = false; //Set by the "timeout" argument. The requests then tell the server how long the client waits. ENTS/1.0 servers reject it.
 	
 	public static void main(String[] args) throws Exception {
 
@@ -24,13 +55,41 @@ public class Client {
 		Scanner inp =  new Scanner(System.in);
 		String file = ""; 
 		String viewMoreFiles = "yes"; //Input by user - if more files have to be viewed
+		for(String arg : args) {
+			if(arg.equals("resume"))
+				resumableDownloads = true; //Download in ranges, so that a download can be resumed after loss
+			else if(arg.equals("cache"))
+				cachedDownloads = true; //Send the validator of the cached copy, so that unchanged files are not sent again
+			else if(arg.equals("stream"))
+				streamToDisk = true; //Write the received bytes to disk as they arrive instead of keeping the file in memory
+			else if(arg.matches("^priority=(high|normal|low)$"))
+				requestPriority = arg.substring(9); //Priority class of the requests with header fields
+			else if(arg.equals("crc32c"))
+				integrityAlgorithm = "crc32c"; //Protect all the requests and their responses with CRC32C
+			else if(arg.equals("timeout"))
+				sendTimeout = true; //Send the "Timeout" header field, so that the server drops requests the client no longer waits for
+		}
 		
 		while(viewMoreFiles.matches("yes")) {
 			System.out.print("Please type the name of the required file from the list below: \n");
-			System.out.print("1. file_A.txt \n2. file_B.txt \n3. file_C.txt\n\n");
+			System.out.print("1. file_A.txt \n2. file_B.txt \n3. file_C.txt\n");
+			System.out.print("(Separate several file names with a comma to get them in one batch request)\n\n");
 			file = inp.next(); //Get the file name of the required file.					
-			if(utility.isFileNameSyntaxCorrect(file, "request")) {
-				messageHandling(file, utility); //If the syntax of the file name is correct, proceed with handling the request.
+			if(file.contains(",")) {
+				String[] files = file.split(",");//Several files are requested in one batch request
+				for(String name : files)
+					utility.isFileNameSyntaxCorrect(name, "request");//Throws an exception if the syntax of any file name is wrong
+				batchMessageHandling(files, utility);
+			}
+			else if(utility.isFileNameSyntaxCorrect(file, "request")) {
+				if(streamToDisk)
+					streamingMessageHandling(file, utility);
+				else if(resumableDownloads)
+					rangeMessageHandling(file, utility);
+				else if(cachedDownloads)
+					conditionalMessageHandling(file, utility);
+				else
+					messageHandling(file, utility); //If the syntax of the file name is correct, proceed with handling the request.
 			}
 			System.out.print("\n\nDo you want to view more files?(yes/no)");
 			viewMoreFiles = inp.next(); //Continue till the response by user is no.
@@ -39,39 +98,69 @@ public class Client {
 	}// end of main()
 
 	/*
-	 * messageHandling(String file, ClientServerUtility utility)
-	 * This function sends the request and handles the response sent by the server.
+	 * String messageHandling(String file, ClientServerUtility utility)
+	 * This function sends the request and handles the response sent by the server. If no response is received in 1s,
+	 * the request is resent through the same socket after 2s, 4s and 8s. A response which fails the integrity check
+	 * is requested again at once.
 	 * file - The file whose contents have to be viewed
 	 * utility - Object of ClientServerUtility class
+	 * @return: receivedResponse - the processed response. null if no response was received even after the 4th timeout.
 	 */
-	public static void messageHandling(String file, ClientServerUtility utility) throws Exception{
-		DatagramSocket clientSocket = null; //Socket using which the data will be sent
-		Boolean responseIntegrityValueMatches = false; //Compare the values of the integrity field and calculated integrity value.
-		String receivedResponse = "";
-		while(responseIntegrityValueMatches == false) {
-			//if the values of the integrity field and calculated integrity value in the response don't match,
-			//keep re-sending the message till the correct integrity value is received.
-			clientSocket = handleRequest(file,utility); //get the socket details via which messages are sent and received.
-			receivedResponse = handleResponse(clientSocket, file, utility);
-		  responseIntegrityValueMatches = utility.isIntegrityValueOfMessageCorrect(receivedResponse, "response");
+	public static String messageHandling(String file, ClientServerUtility utility) throws Exception{
+		DatagramSocket clientSocket = null; //Socket using which the data will be sent. The retransmissions use it too.
+		String receivedResponse = null;
+		int timeout = 1; //Timeout in seconds. Doubled after each timeout.
+		while(null == receivedResponse) {
+			clientSocket = handleRequest(file, timeout, clientSocket, utility); //get the socket details via which messages are sent and received.
+			receivedResponse = handleResponse(clientSocket, timeout);
+			if(null == receivedResponse) {
+				timeout = timeout*2; //Double the time interval after each timeout
+				if(timeout == 16) {
+					//No response even after the 4th timeout
+					System.out.println("\nNo response received from server.");
+					clientSocket.close();
+					return null;
+				}
+			}
+			else if(!utility.isIntegrityValueOfMessageCorrect(receivedResponse, "response")) {
+				//if the values of the integrity field and calculated integrity value in the response don't match,
+				//keep re-sending the message till the correct integrity value is received.
+				receivedResponse = null;
+			}
 		}
 		//handle the received response
 		processResponse(receivedResponse,file,clientSocket,utility);
+		clientSocket.close();
+		return receivedResponse;
 	}//end of messageHandling()
   
 	
 	/*
 	 * handleRequest(String file, ClientServerUtility utility)
-	 * This function sends the request to the server in byte form.
+	 * This function sends the request to the server in byte form through a new socket. The server is told
+	 * that the client waits 1s for the response.
 	 * 
 	 * file - The file whose contents have to be viewed
 	 * utility - Object of ClientServerUtility class
 	 * @return: clientSocket - The socket details via which the request was sent. Required to listen to response.
 	 */
 	public static DatagramSocket handleRequest(String file, ClientServerUtility utility) throws Exception {
-		byte[] requestMessageInBytes = utility.messageInBytes(generateRequestMessage(file, utility));//The request has to be sent as bytes
-		DatagramSocket clientSocket = sendRequestToServer(requestMessageInBytes); //Get the socket details via which the request was sent
-		return clientSocket;
+		return handleRequest(file, 1, null, utility);
+	}//end of handleRequest()
+	
+	/*
+	 * handleRequest(String file, int timeout, DatagramSocket clientSocket, ClientServerUtility utility)
+	 * This function sends the request to the server in byte form.
+	 * 
+	 * file - The file whose contents have to be viewed
+	 * timeout - Time in seconds the client waits for the response. Sent in the "Timeout" header field with the "timeout" argument.
+	 * clientSocket - The socket of the earlier attempts. null to create a new socket.
+	 * utility - Object of ClientServerUtility class
+	 * @return: clientSocket - The socket details via which the request was sent. Required to listen to response.
+	 */
+	public static DatagramSocket handleRequest(String file, int timeout, DatagramSocket clientSocket, ClientServerUtility utility) throws Exception {
+		byte[] requestMessageInBytes = utility.messageInBytes(generateRequestMessage(file, timeout*1000, utility));//The request has to be sent as bytes. With the "timeout" argument the server is told how long the client waits.
+		return sendRequestToServer(requestMessageInBytes, clientSocket); //Get the socket details via which the request was sent
 	}//end of handleRequest()
 
 	
@@ -84,8 +173,25 @@ public class Client {
 	 * @return: assembledRequest - the final assembled request
 	 */
 	public static String generateRequestMessage(String file, ClientServerUtility utility) {
+		return generateRequestMessage(file, 0, utility);
+	}// generateRequestMessage()
+	
+	/*
+	 * String generateRequestMessage(String file, int timeout, ClientServerUtility utility)
+	 * This function assembles the request for the whole file. If the user chose header fields with the "crc32c",
+	 * "priority=" or "timeout" argument, the request is assembled with header fields like the other requests.
+	 * Otherwise it is a plain ENTS/1.0 request, which every server understands.
+	 * 
+	 * file - The file whose contents have to be viewed
+	 * timeout - Time in ms the client waits for the response. Only sent with the "timeout" argument.
+	 * utility - Object of ClientServerUtility class 
+	 * @return: assembledRequest - the final assembled request
+	 */
+	public static String generateRequestMessage(String file, int timeout, ClientServerUtility utility) {
 		if (null == file)
 			throw new IllegalArgumentException("\nNo file selected!!");
+		else if(null != integrityAlgorithm || null != requestPriority || (sendTimeout && timeout > 0))
+			return generateRequestMessage(file, "", timeout, utility);
 		else {
 	    String assembledRequest = "";// the final assembled request in String format
 	    String firstLine = "ENTS/1.0 Request\r\n";// First line (request line)
@@ -106,18 +212,32 @@ public class Client {
 	 * @return  - DatagramSocket object which has the details of the client socket
 	 */
 	public static DatagramSocket sendRequestToServer(byte[] requestBytes) throws Exception {
+		return sendRequestToServer(requestBytes, null);
+	}// end of sendPacketToServer()
+	
+	/*
+	 * sendRequestToServer(byte[] requestBytes, DatagramSocket clientSocket)
+	 * This function sends the request through the given socket. A retransmission is sent through the socket of the
+	 * first attempt, so that the server sees it comes from the same client and drops the older copy it still has queued.
+	 * 
+	 * clientSocket - The socket of the earlier attempts. null to create a new socket.
+	 * @return  - DatagramSocket object which has the details of the client socket
+	 */
+	public static DatagramSocket sendRequestToServer(byte[] requestBytes, DatagramSocket clientSocket) throws Exception {
 		// Get the IP of the server.
 		// Here we get the details of local host as we are using the same computer(same IP)
 		// but use different instances of Eclipse to act as client and server. 
 		InetAddress serverDetails = InetAddress.getLocalHost();
 		int clientPort = 1027;
-		DatagramSocket clientSocket = null;//Socket using which the data will be sent
 		
 		if(null != serverDetails) {
 			//send the packet to the server and store the used socket details
 		  //Create a DatagramPacket object for the packets to be sent
 			DatagramPacket packetToBeSent = new DatagramPacket(requestBytes, requestBytes.length, serverDetails, clientPort);
-			clientSocket = new DatagramSocket();//Socket using which the data will be sent
+			if(null == clientSocket) {
+				clientSocket = (null == socketFactory) ? new DatagramSocket() : socketFactory.call();//Socket using which the data will be sent
+				new ClientServerUtility().configureSocket(clientSocket);//Socket buffers sized for datagrams of the payload size
+			}
 	    clientSocket.send(packetToBeSent); // send the packet through the socket
 	    return clientSocket;
 		}
@@ -130,82 +250,61 @@ public class Client {
 	}// end of sendPacketToServer()
 	
 	/*
-	 * String handleResponse(DatagramSocket clientSocket,String file, ClientServerUtility utility)
+	 * String handleResponse(DatagramSocket clientSocket, int timeout)
 	 * This function receives the response from the server is bytes and then converts it into String.
 	 * 
 	 * clientSocket - The socket details via which the request was sent. Required to listen to response.
-	 * file - The file whose contents have to be viewed
-	 * utility - Object of ClientServerUtility class
-	 * @return: receivedResponse - the received response in String
+	 * timeout - Time in seconds to wait for the response
+	 * @return: receivedResponse - the received response in String. null if no response was received in time.
 	 */
-	public static String handleResponse(DatagramSocket clientSocket, String file, ClientServerUtility utility) throws Exception {
-		byte[] responseInBytes = receiveResponseFromServer(clientSocket, file, utility);
+	public static String handleResponse(DatagramSocket clientSocket, int timeout) throws Exception {
+		byte[] responseInBytes = receiveResponseFromServer(clientSocket, timeout);
+		if(null == responseInBytes)
+			return null;
 	  String receivedResponse = new String(responseInBytes, 0, responseInBytes.length);//Store the received message in a string
 	  System.out.printf("\n\nThe received response is : \n%s", receivedResponse);
 	  return receivedResponse;
 	}// end of handleResponse()
 	
 	/*
-	 * receiveResponseFromServer(DatagramSocket clientSocket, String file, ClientServerUtility utility)
-	 * This function receives the response from the server. If no response is received is 1s,
-	 * the request is resent after 2s, 4s and 8s. Still if no response is received then timeout.
+	 * receiveResponseFromServer(DatagramSocket clientSocket, int timeout)
+	 * This function receives the response from the server. The caller resends the request if no response
+	 * is received in time.
 	 *   
 	 * clientSocket : DatagramSocket object which has the details of the client socket
-	 * file - The file whose contents have to be viewed
-	 * utility - Object of ClientServerUtility class
-	 * @return: responseFromServer - The response from the server in byte form
+	 * timeout - Time in seconds to wait for the response
+	 * @return: responseFromServer - The response from the server in byte form. null if no response was received in time.
 	 */
-	public static byte[] receiveResponseFromServer(DatagramSocket clientSocket, String file, ClientServerUtility utility) throws Exception{
-		byte[] responseFromServer = new byte[100000]; // To receive response from the server.
-		DatagramPacket receivedPackets = new DatagramPacket(responseFromServer, responseFromServer.length); // DatagramPacket object to store the received packet
-
-			while (resendCount <= 16) {
-			clientSocket.setSoTimeout(resendCount*1000); //Block the receive() for i*1000s - If no byte is received in this interval, timeout happens
-			try {
-			  clientSocket.receive(receivedPackets); // Receive the packet from the socket
-			  responseFromServer = receivedPackets.getData();//Store the received bytes
-			  return responseFromServer;
-			}
-			catch(Exception e) {
-				resendCount = resendCount*2; //Double the time interval after each timeout
-				if(resendCount <= 8) {
-					//Try re-sending the request 
-					messageHandling(file, utility);
-				}
-				else if(resendCount == 16) {
-				//Handle exception when 4th timeout occurs. When re-sending the request the 4th time, i value is 8.
-				//So if timeout occurs even after 4th timeout (8*2 = 16), throw an error. 
-				System.out.println("\nNo response received from server. " + e.getMessage());
-				System.exit(0);
-				}
-			}
-		}//end of for loop
-		return responseFromServer;
+	public static byte[] receiveResponseFromServer(DatagramSocket clientSocket, int timeout) throws Exception{
+		DatagramPacket receivedPackets = new DatagramPacket(datagramBuffer, datagramBuffer.length); // DatagramPacket object to store the received packet. Any datagram fits in the buffer.
+		clientSocket.setSoTimeout(timeout*1000); //Block the receive() for timeout*1000ms - If no byte is received in this interval, timeout happens
+		try {
+		  clientSocket.receive(receivedPackets); // Receive the packet from the socket
+		  return Arrays.copyOf(receivedPackets.getData(), receivedPackets.getLength());//Only the received bytes, as the buffer is reused
+		}
+		catch(SocketTimeoutException e) {
+			return null;
+		}
 	}//end of receiveResponseFromServer()
 	
 	/*
 	 * processResponse(String receivedResponse, String file, DatagramSocket clientSocket, ClientServerUtility utility)
 	 * This function processes the response based on the response code.
 	 * 
-	 * clientSocket : DatagramSocket object which has the details of the client socket
+	 * clientSocket : DatagramSocket object which has the details of the client socket. null if it is already closed.
 	 * file - The file whose contents have to be viewed
 	 * utility - Object of ClientServerUtility class
 	 * receivedResponse - The response from the server
 	 */
 	public static void processResponse(String receivedResponse, String file, DatagramSocket clientSocket, ClientServerUtility utility) throws Exception{
-		String[] splitResponse = receivedResponse.split("\r\n");//split the response into separate fields with CRLF as delimiter 
+		String[] splitResponse = receivedResponse.split("\r\n", ClientServerUtility.MAX_HEADER_LINES);//split the header lines of the response with CRLF as delimiter. The rest is the content.
 		String responseCode = splitResponse[1];//The response code will be the 2nd field.
 		
 		if(responseCode.matches("0")) {
 			//The response is OK
-			String fileContent = "";//The content of the requested file
-			String contentAndIntegrityValue = "";//The file content and integrity value will be a single string as there is no CRLF at the end of file
-			for(int i=3; i<splitResponse.length-1; i++) {
-				//Combine all the lines of the file content and integrity value into 1 string
-				contentAndIntegrityValue = contentAndIntegrityValue + splitResponse[i] + "\r\n";
-			}
-			int contentLength = Integer.parseInt(splitResponse[2]);
-			fileContent = contentAndIntegrityValue.substring(0, contentLength);//Extract only the file content
+			int headerLines = 3 + utility.getHeaderCount(splitResponse, 2);//The optional header fields are before the content length
+			int contentLength = Integer.parseInt(splitResponse[headerLines-1]);
+			String fileContent = utility.extractContent(receivedResponse, headerLines, contentLength);//Extract only the file content
 			System.out.printf("\n\nThe contents of the requested file is: \n%s",fileContent);
 		}
 		else if(responseCode.matches("1")) {
@@ -224,21 +323,535 @@ public class Client {
 		else if(responseCode.matches("2")) {
 			//Syntax of the request is wrong.
 			System.out.print("\nError: Malformed request. The syntax of the request message is not correct");
-			clientSocket.close();
+			if(null != clientSocket)
+				clientSocket.close();
 			System.exit(0);
 		}
 		else if(responseCode.matches("3")) {
 			//The requested file does not exist in the server.
 			System.out.print("\nError: Non-existent file. The file with the requested name does not exist");
-			clientSocket.close();
+			if(null != clientSocket)
+				clientSocket.close();
 			System.exit(0);
 		}
 		else if(responseCode.matches("4")) {
 			//Protocol version is wrong. It should only be 1.0
 			System.out.print("\nError: Wrong protocol version. The version in the request is different from 1.0");
-			clientSocket.close();
+			if(null != clientSocket)
+				clientSocket.close();
 			System.exit(0);
 		}
 	}//end of processResponse()
 	
+	/*
+	 * rangeMessageHandling(String file, ClientServerUtility utility)
+	 * This function downloads the file in byte ranges which fit in one packet. A lost or corrupted range is
+	 * requested again from the same offset. If the server does not respond even after the 4th timeout, the bytes
+	 * received so far are kept and the next download of the same file resumes from there instead of from byte 0,
+	 * unless the validator shows that the file changed in between.
+	 * 
+	 * file - The file whose contents have to be viewed
+	 * utility - Object of ClientServerUtility class
+	 */
+	public static void rangeMessageHandling(String file, ClientServerUtility utility) throws Exception {
+		ByteArrayOutputStream receivedContent = partialDownloads.get(file);//Resume an unfinished download of the same file
+		if(null == receivedContent) {
+			receivedContent = new ByteArrayOutputStream();
+			partialDownloads.put(file, receivedContent);
+		}
+		long result;
+		while((result = receiveRanges(file, receivedContent.size(), receivedContent, null, utility)) == FILE_CHANGED)
+			receivedContent.reset();//The file changed on the server since the download started. Start again from byte 0.
+		if(result == NO_RESPONSE) {
+			//Keep the received bytes for resuming later.
+			System.out.printf("The download of %s can be resumed from byte %d", file, receivedContent.size());
+			return;
+		}
+		partialDownloads.remove(file);
+		if(result >= 0)
+			System.out.printf("\n\nThe contents of the requested file is: \n%s", receivedContent.toString());
+	}//end of rangeMessageHandling()
+	
+	/*
+	 * streamingMessageHandling(String file, ClientServerUtility utility)
+	 * This function downloads the file in byte ranges like rangeMessageHandling(), but every verified range is written
+	 * to the download folder as soon as it arrives. Only one datagram is kept in memory, whatever the size of the file.
+	 * The bytes are first written to <file>.part, which is renamed to the file name when the download is complete.
+	 * The validator of the file is kept in <file>.part.validator, like the validator of a cached copy. An unfinished
+	 * .part file is resumed from its size, even after the client was restarted, and the first range response shows
+	 * whether the file changed in between. A .part file without its validator is downloaded again from byte 0.
+	 * 
+	 * file - The file which has to be downloaded
+	 * utility - Object of ClientServerUtility class
+	 */
+	public static void streamingMessageHandling(String file, ClientServerUtility utility) throws Exception {
+		new File(downloadFolder).mkdirs();
+		File partFile = new File(downloadFolder, file + ".part");//The bytes received so far
+		File partValidator = new File(downloadFolder, file + ".part.validator");//Validator of the file when the download started
+		boolean resumable = partFile.isFile() && partValidator.isFile();
+		if(resumable)
+			partialValidators.put(file, new String(Files.readAllBytes(partValidator.toPath())));//Compared with the validator of the first range
+		else
+			partialValidators.remove(file);
+		OutputStream sink = new FileOutputStream(partFile, resumable);//Append to an unfinished download which can be verified
+		long result;
+		try {
+			while((result = receiveRanges(file, partFile.length(), sink, partValidator, utility)) == FILE_CHANGED) {
+				//The file changed on the server since the download started. Start again from byte 0.
+				sink.close();
+				sink = new FileOutputStream(partFile, false);
+			}
+		}
+		finally {
+			sink.close();
+		}
+		if(result == NO_RESPONSE) {
+			System.out.printf("The download of %s can be resumed from byte %d", file, partFile.length());
+			return;
+		}
+		File downloadedFile = new File(downloadFolder, file);
+		if(result >= 0 && (!downloadedFile.exists() || downloadedFile.delete()) && partFile.renameTo(downloadedFile)) {
+			partValidator.delete();
+			System.out.printf("\n\nThe requested file was saved to %s (%d bytes)", downloadedFile.getPath(), result);
+		}
+	}//end of streamingMessageHandling()
+	
+	/*
+	 * long receiveRanges(String file, long offset, OutputStream sink, File validatorFile, ClientServerUtility utility)
+	 * This function requests the file range by range from the offset onwards. Each range is verified with its own
+	 * integrity value and written to the sink before the next range is requested. A lost or corrupted range is
+	 * requested again from the same offset.
+	 * 
+	 * file - The file which has to be downloaded
+	 * offset - Number of bytes of the file which are already in the sink
+	 * sink - Where the received bytes are written
+	 * validatorFile - Where the validator is written before the bytes it belongs to. null if it is only kept in memory.
+	 * utility - Object of ClientServerUtility class
+	 * @return: the size of the file when it is complete, NO_RESPONSE if there is no response even after the 4th timeout,
+	 *          FILE_CHANGED if the validator shows the file changed since byte 0 was received (the sink has to be emptied),
+	 *          ERROR_RESPONSE if the server sent an error response code, which was already handled
+	 */
+	public static long receiveRanges(String file, long offset, OutputStream sink, File validatorFile, ClientServerUtility utility) throws Exception {
+		long fileSize = -1; //Size of the file. Known after the first range response.
+		while(fileSize < 0 || offset < fileSize) {
+			final long rangeOffset = offset;
+			final int length = (rangeLength > 0) ? rangeLength : utility.getMaxPayloadSize() - ClientServerUtility.RESPONSE_HEADER_ALLOWANCE;
+			byte[] receivedResponse = exchangeRawWithRetransmit(timeout -> generateRangeRequestMessage(file, rangeOffset, length, timeout, utility), utility);
+			if(null == receivedResponse)
+				return NO_RESPONSE;
+			//The content is raw bytes. ISO-8859-1 maps every byte to one char, so the header lines can be read and char positions are byte positions.
+			String headerView = new String(receivedResponse, StandardCharsets.ISO_8859_1);
+			String[] splitResponse = headerView.split("\r\n", ClientServerUtility.MAX_HEADER_LINES);//Only the header lines are needed
+			if(!splitResponse[1].matches("0")) {
+				//Errors are handled like for a normal request
+				partialValidators.remove(file);
+				processResponse(new String(receivedResponse), file, null, utility);
+				return ERROR_RESPONSE;
+			}
+			String validator = utility.getHeaderValue(splitResponse, 2, "Validator");
+			String previousValidator = partialValidators.put(file, validator);
+			if(null != validatorFile && !validator.equals(previousValidator))
+				Files.write(validatorFile.toPath(), validator.getBytes());//The validator of the bytes which follow
+			if(null != previousValidator && !previousValidator.equals(validator))
+				return FILE_CHANGED;
+			String range = utility.getHeaderValue(splitResponse, 2, "Range");//<offset>-<number of bytes sent>/<size of the file>
+			int headerLines = 3 + utility.getHeaderCount(splitResponse, 2);
+			if(Long.parseLong(range.substring(0, range.indexOf("-"))) == offset) {
+				//Write the range only if it continues the received bytes. The bytes are copied as they are, a range can end inside a character.
+				sink.write(receivedResponse, utility.getContentStart(headerView, headerLines), Integer.parseInt(splitResponse[headerLines-1]));
+				offset = offset + Long.parseLong(range.substring(range.indexOf("-")+1, range.indexOf("/")));
+			}
+			fileSize = Long.parseLong(range.substring(range.indexOf("/")+1));
+		}
+		partialValidators.remove(file);
+		return fileSize;
+	}//end of receiveRanges()
+	
+	/*
+	 * conditionalMessageHandling(String file, ClientServerUtility utility)
+	 * This function sends the validator of the cached copy of the file in the "If-None-Match" header field.
+	 * If the file did not change, the server only sends response code 5 (not modified) and the cached copy is shown.
+	 * Otherwise the received file and its validator are stored in the cache folder.
+	 * 
+	 * file - The file whose contents have to be viewed
+	 * utility - Object of ClientServerUtility class
+	 */
+	public static void conditionalMessageHandling(String file, ClientServerUtility utility) throws Exception {
+		File cachedFile = new File(cacheFolder, file);//Cached copy of the file
+		File cachedValidator = new File(cacheFolder, file + ".validator");//Validator of the cached copy
+		String validator = "0";//"0" is never a validator. Sent when there is no cached copy.
+		if(cachedFile.isFile() && cachedValidator.isFile())
+			validator = new String(Files.readAllBytes(cachedValidator.toPath()));
+		
+		final String cachedCopyValidator = validator;
+		String receivedResponse = exchangeWithRetransmit(timeout -> generateConditionalRequestMessage(file, cachedCopyValidator, timeout, utility), utility);
+		if(null == receivedResponse)
+			System.exit(0);//No response even after the 4th timeout
+		String[] splitResponse = receivedResponse.split("\r\n");
+		if(splitResponse[1].matches("5")) {
+			//Not modified. Show the cached copy.
+			System.out.printf("\n\nThe file has not been modified. The contents of the cached file is: \n%s", new String(Files.readAllBytes(cachedFile.toPath())));
+		}
+		else if(splitResponse[1].matches("0")) {
+			int headerLines = 3 + utility.getHeaderCount(splitResponse, 2);
+			String fileContent = utility.extractContent(receivedResponse, headerLines, Integer.parseInt(splitResponse[headerLines-1]));
+			new File(cacheFolder).mkdirs();
+			Files.write(cachedFile.toPath(), fileContent.getBytes());//Store the file first, then the validator which makes it valid
+			Files.write(cachedValidator.toPath(), utility.getHeaderValue(splitResponse, 2, "Validator").getBytes());
+			System.out.printf("\n\nThe contents of the requested file is: \n%s", fileContent);
+		}
+		else {
+			processResponse(receivedResponse, file, null, utility);//Errors are handled like for a normal request
+		}
+	}//end of conditionalMessageHandling()
+	
+	/*
+	 * String generateConditionalRequestMessage(String file, String validator, int timeout, ClientServerUtility utility)
+	 * This function assembles a request with the "If-None-Match" header field between the file name and the integrity check value.
+	 * 
+	 * file - The file whose contents have to be viewed
+	 * validator - Validator of the cached copy of the file. "0" when there is no cached copy.
+	 * timeout - Time in ms the client waits for the response. 0 if it is not sent.
+	 * utility - Object of ClientServerUtility class 
+	 * @return: assembledRequest - the final assembled request
+	 */
+	public static String generateConditionalRequestMessage(String file, String validator, int timeout, ClientServerUtility utility) {
+		if (null == file)
+			throw new IllegalArgumentException("\nNo file selected!!");
+		return generateRequestMessage(file, "If-None-Match: " + validator + "\r\n", timeout, utility);
+	}//end of generateConditionalRequestMessage()
+	
+	/*
+	 * String exchangeWithRetransmit(IntFunction<String> requestMessage, ClientServerUtility utility)
+	 * This function sends the request and waits for a response with a correct integrity value. If no response is
+	 * received in 1s, the request is resent and the timeout is doubled to 2s, 4s and 8s. A response with a wrong
+	 * integrity value is dropped and the request is resent.
+	 * The request is assembled again for every attempt, so that its "Timeout" header field tells the server how long
+	 * the client waits this time. The server does not handle requests whose client has already stopped waiting.
+	 * All the attempts are sent from one socket, so a late response to an earlier attempt is accepted too.
+	 * 
+	 * requestMessage - Assembles the request for the time in ms the client waits
+	 * utility - Object of ClientServerUtility class
+	 * @return: the received response, null if no response is received even after the 4th timeout
+	 */
+	public static String exchangeWithRetransmit(IntFunction<String> requestMessage, ClientServerUtility utility) throws Exception {
+		byte[] receivedResponse = exchange(requestMessage, false, utility);
+		return (null == receivedResponse) ? null : new String(receivedResponse);
+	}//end of exchangeWithRetransmit()
+	
+	/*
+	 * byte[] exchangeRawWithRetransmit(IntFunction<String> requestMessage, ClientServerUtility utility)
+	 * This function works like exchangeWithRetransmit(), for responses whose content is raw bytes (range responses).
+	 * The integrity value is checked over the bytes, and the response is not converted to String.
+	 * 
+	 * requestMessage - Assembles the request for the time in ms the client waits
+	 * utility - Object of ClientServerUtility class
+	 * @return: the received response in byte form, null if no response is received even after the 4th timeout
+	 */
+	public static byte[] exchangeRawWithRetransmit(IntFunction<String> requestMessage, ClientServerUtility utility) throws Exception {
+		return exchange(requestMessage, true, utility);
+	}//end of exchangeRawWithRetransmit()
+	
+	/*
+	 * byte[] exchange(IntFunction<String> requestMessage, boolean rawContent, ClientServerUtility utility)
+	 * The retransmit loop of exchangeWithRetransmit() and exchangeRawWithRetransmit().
+	 * 
+	 * rawContent - true if the content of the response is raw bytes
+	 * @return: the received response in byte form, null if no response is received even after the 4th timeout
+	 */
+	static byte[] exchange(IntFunction<String> requestMessage, boolean rawContent, ClientServerUtility utility) throws Exception {
+		int timeout = 1; //Timeout in seconds
+		DatagramSocket clientSocket = null; //Socket of all the attempts
+		try {
+			while(true) {
+				byte[] requestMessageInBytes = utility.messageInBytes(requestMessage.apply(timeout*1000));
+				clientSocket = sendRequestToServer(requestMessageInBytes, clientSocket);
+				try {
+					byte[] receivedResponse = receiveDatagramBytes(clientSocket, timeout);
+					if(rawContent ? utility.isIntegrityValueOfRawResponseCorrect(receivedResponse, receivedResponse.length)
+							: utility.isIntegrityValueOfMessageCorrect(new String(receivedResponse), "response"))
+						return receivedResponse;
+				}
+				catch(SocketTimeoutException e) {
+					timeout = timeout*2; //Double the time interval after each timeout
+					if(timeout == 16) {
+						System.out.println("\nNo response received from server. " + e.getMessage());
+						return null;
+					}
+				}
+			}
+		}
+		finally {
+			if(null != clientSocket)
+				clientSocket.close();
+		}
+	}//end of exchange()
+	
+	/*
+	 * String generateRangeRequestMessage(String file, long offset, int length, int timeout, ClientServerUtility utility)
+	 * This function assembles a request for a byte range of the file. The range is sent as the optional
+	 * "Range" header field between the file name and the integrity check value.
+	 * 
+	 * file - The file whose contents have to be viewed
+	 * offset - The first byte of the range
+	 * length - Number of bytes asked for
+	 * timeout - Time in ms the client waits for the response. 0 if it is not sent.
+	 * utility - Object of ClientServerUtility class 
+	 * @return: assembledRequest - the final assembled request
+	 */
+	public static String generateRangeRequestMessage(String file, long offset, int length, int timeout, ClientServerUtility utility) {
+		if (null == file)
+			throw new IllegalArgumentException("\nNo file selected!!");
+		return generateRequestMessage(file, "Range: " + offset + "-" + length + "\r\n", timeout, utility);
+	}//end of generateRangeRequestMessage()
+	
+	/*
+	 * String generateRequestMessage(String file, String headers, int timeout, ClientServerUtility utility)
+	 * This function assembles a request with optional header fields between the file name and the integrity check value.
+	 * If an integrity algorithm was chosen, it is announced in the "Integrity" header field and used for the integrity check value.
+	 * The "Timeout" and "Priority" header fields are used by the server to schedule the request.
+	 * 
+	 * file - The file whose contents have to be viewed
+	 * headers - "Name: value" lines, each ending with CR+LF
+	 * timeout - Time in ms the client waits for the response, sent in the "Timeout" header field with the "timeout" argument.
+	 * utility - Object of ClientServerUtility class 
+	 * @return: assembledRequest - the final assembled request
+	 */
+	public static String generateRequestMessage(String file, String headers, int timeout, ClientServerUtility utility) {
+		if(null != requestPriority)
+			headers = "Priority: " + requestPriority + "\r\n" + headers;
+		if(sendTimeout && timeout > 0)
+			headers = "Timeout: " + timeout + "\r\n" + headers;
+		if(null != integrityAlgorithm)
+			headers = "Integrity: " + integrityAlgorithm + "\r\n" + headers;
+		String assembledRequest = "ENTS/1.0 Request\r\n" + file + "\r\n" + headers;
+		String integrityCheckValue = (null == integrityAlgorithm) ? utility.getIntegrityCheckValue(assembledRequest)
+				: utility.getIntegrityCheckValue(assembledRequest, integrityAlgorithm); //get the integrity check value for the request
+		assembledRequest = assembledRequest + integrityCheckValue + "\r\n";
+		System.out.printf("\nThe sent request is :\n%s", assembledRequest);
+		return assembledRequest;
+	}//end of generateRequestMessage()
+	
+	/*
+	 * batchMessageHandling(String[] files, ClientServerUtility utility)
+	 * This function requests several files in one batch request and handles the sequenced datagrams sent back by the server.
+	 * A file larger than one datagram arrives in pieces, which are put together by their offset.
+	 * If some datagrams are lost or fail the integrity check, only the missing pieces are requested again: an incomplete
+	 * file is requested with the ranges which are still missing (see getMissingRanges()). The timeout is doubled after
+	 * each round without any new piece, and starts again from 1s after a round which brought new pieces.
+	 * 
+	 * files - The files whose contents have to be viewed
+	 * utility - Object of ClientServerUtility class
+	 */
+	public static void batchMessageHandling(String[] files, ClientServerUtility utility) throws Exception {
+		Map<String, TreeMap<Integer, String>> receivedPieces = new HashMap<String, TreeMap<Integer, String>>();//Verified pieces of every file, by offset
+		Map<String, Integer> fileLengths = new HashMap<String, Integer>();//Length of every file. Known after its first piece.
+		Map<String, String> responseCodes = new HashMap<String, String>();//Response code of every completed file
+		List<String> missingFiles = new ArrayList<String>();//Files which are not complete yet
+		for(String name : files)
+			missingFiles.add(name);
+		int timeout = 1; //Timeout in seconds. Doubled after each round without a new piece.
+		
+		while(!missingFiles.isEmpty()) {
+			List<String> requestedFiles = new ArrayList<String>();//The missing files, each with its missing ranges if a piece was received
+			for(String name : missingFiles)
+				requestedFiles.add(fileLengths.containsKey(name) ? name + getMissingRanges(receivedPieces.get(name), fileLengths.get(name), Math.max(1, MAX_MISSING_RANGES/missingFiles.size())) : name);
+			byte[] requestMessageInBytes = utility.messageInBytes(generateBatchRequestMessage(requestedFiles.toArray(new String[0]), utility));
+			DatagramSocket clientSocket = sendRequestToServer(requestMessageInBytes);
+			boolean newPieces = false; //Whether this round brought a piece which was not received before
+			try {
+				Set<String> receivedSequenceNumbers = new HashSet<String>();//Datagrams of this batch response received so far
+				int total = -1; //Number of datagrams of this batch response. Known after the first datagram.
+				while(total < 0 || receivedSequenceNumbers.size() < total) {
+					String receivedResponse = receiveDatagram(clientSocket, timeout);
+					if(!receivedResponse.startsWith("ENTS/1.0 BatchResponse")) {
+						//The batch request as a whole was rejected. The server sent a normal response with the error code.
+						if(utility.isIntegrityValueOfMessageCorrect(receivedResponse, "response")) {
+							processBatchError(receivedResponse, files, clientSocket, utility);
+							return;
+						}
+						continue;
+					}
+					if(!utility.isIntegrityValueOfMessageCorrect(receivedResponse, "batch response"))
+						continue;//A corrupted piece is requested again with its file
+					String[] splitResponse = receivedResponse.split("\r\n", ClientServerUtility.MAX_HEADER_LINES);//Only the header lines are needed
+					int headerFields = utility.getHeaderCount(splitResponse, 5);//Optional header fields after the response code
+					total = Integer.parseInt(splitResponse[2]);
+					String fileName = splitResponse[3];
+					if(!receivedSequenceNumbers.add(splitResponse[1]) || !missingFiles.contains(fileName))
+						continue;//Duplicate datagram or file already complete
+					String[] offsetAndFileLength = splitResponse[5+headerFields].split("/");
+					TreeMap<Integer, String> pieces = receivedPieces.get(fileName);
+					if(null == pieces) {
+						pieces = new TreeMap<Integer, String>();
+						receivedPieces.put(fileName, pieces);
+					}
+					pieces.put(Integer.parseInt(offsetAndFileLength[0]), utility.extractContent(receivedResponse, 7+headerFields, Integer.parseInt(splitResponse[6+headerFields])));
+					fileLengths.put(fileName, Integer.parseInt(offsetAndFileLength[1]));
+					newPieces = true;
+					int receivedLength = 0;
+					for(String piece : pieces.values())
+						receivedLength = receivedLength + piece.length();
+					if(receivedLength == Integer.parseInt(offsetAndFileLength[1])) {
+						//All the pieces of the file are received
+						missingFiles.remove(fileName);
+						responseCodes.put(fileName, splitResponse[4]);
+					}
+				}
+			}
+			catch(SocketTimeoutException e) {
+				//Some datagrams of this round were lost
+				timeout = newPieces ? 1 : timeout*2; //Start again from 1s after progress, else double the time interval
+				if(timeout == 16) {
+					//No new piece even after the 4th timeout
+					System.out.println("\nNo response received from server. " + e.getMessage());
+					System.exit(0);
+				}
+			}
+			clientSocket.close();
+		}
+		for(String name : files) {
+			//Print the files in the order they were requested
+			StringBuilder fileContent = new StringBuilder();
+			for(String piece : receivedPieces.get(name).values())
+				fileContent.append(piece);
+			processBatchResponse(name, responseCodes.get(name), fileContent.toString());
+		}
+	}//end of batchMessageHandling()
+	
+	/*
+	 * String getMissingRanges(TreeMap<Integer, String> pieces, int fileLength, int maxRanges)
+	 * This function lists the parts of a file which are not covered by the received pieces. They are sent after the
+	 * file name in the batch request, separated by ";", as <offset>-<length> in characters like the "Range" header
+	 * field, e.g. "file_C.txt;1196-1196,4784-2392". The server only sends the pieces of these ranges.
+	 * If more parts are missing than maxRanges, the last range reaches to the end of the last missing part, so that
+	 * the batch request still fits in one packet. The pieces inside it are sent again.
+	 * 
+	 * pieces - The received pieces of the file, by offset
+	 * fileLength - Length of the file content in characters
+	 * maxRanges - Largest number of ranges listed
+	 * @return: ";" and the missing ranges separated by ","
+	 */
+	public static String getMissingRanges(TreeMap<Integer, String> pieces, int fileLength, int maxRanges) {
+		List<int[]> gaps = new ArrayList<int[]>();//Start and end of every missing part
+		int end = 0; //End of the part of the file covered so far
+		for(Map.Entry<Integer, String> piece : pieces.entrySet()) {
+			if(piece.getKey() > end)
+				gaps.add(new int[] {end, piece.getKey()});
+			end = Math.max(end, piece.getKey() + piece.getValue().length());
+		}
+		if(end < fileLength)
+			gaps.add(new int[] {end, fileLength});
+		if(gaps.size() > maxRanges) {
+			gaps.get(maxRanges-1)[1] = gaps.get(gaps.size()-1)[1];//The last range covers the parts after it
+			gaps.subList(maxRanges, gaps.size()).clear();
+		}
+		StringBuilder missingRanges = new StringBuilder();
+		for(int[] gap : gaps)
+			missingRanges.append(",").append(gap[0]).append("-").append(gap[1]-gap[0]);
+		return (missingRanges.length() == 0) ? "" : ";" + missingRanges.substring(1);//"" if the pieces overlap, then the whole file is requested
+	}//end of getMissingRanges()
+	
+	/*
+	 * String generateBatchRequestMessage(String[] files, ClientServerUtility utility)
+	 * This function assembles the batch request: the request line, the number of files, one file name per line
+	 * and a single integrity check value for the whole request. If an integrity algorithm was chosen, it is announced
+	 * in the "Integrity" header field after the number of files, and the server uses it for the batch response too.
+	 * 
+	 * files - The files whose contents have to be viewed, each with its missing ranges if only a part of it is needed
+	 * utility - Object of ClientServerUtility class 
+	 * @return: assembledRequest - the final assembled batch request
+	 */
+	public static String generateBatchRequestMessage(String[] files, ClientServerUtility utility) {
+		if (null == files || files.length == 0)
+			throw new IllegalArgumentException("\nNo file selected!!");
+		StringBuilder assembledRequest = new StringBuilder("ENTS/1.0 BatchRequest\r\n");// First line (request line)
+		assembledRequest.append(files.length).append("\r\n");// Second line is the number of requested files
+		if(null != integrityAlgorithm)
+			assembledRequest.append("Integrity: ").append(integrityAlgorithm).append("\r\n");
+		for(String name : files)
+			assembledRequest.append(name).append("\r\n");
+		String integrityCheckValue = (null == integrityAlgorithm) ? utility.getIntegrityCheckValue(assembledRequest.toString())
+				: utility.getIntegrityCheckValue(assembledRequest.toString(), integrityAlgorithm); //get the integrity check value for the whole batch
+		assembledRequest.append(integrityCheckValue).append("\r\n");
+		System.out.printf("\nThe sent request is :\n%s", assembledRequest);
+		return assembledRequest.toString();
+	}//end of generateBatchRequestMessage()
+	
+	/*
+	 * String receiveDatagram(DatagramSocket clientSocket, int timeout)
+	 * This function receives one datagram of a batch response or a range response.
+	 * 
+	 * clientSocket : DatagramSocket object which has the details of the client socket
+	 * timeout - Time in seconds to wait for the datagram
+	 * @return: the received datagram in String
+	 */
+	public static String receiveDatagram(DatagramSocket clientSocket, int timeout) throws Exception {
+		return new String(receiveDatagramBytes(clientSocket, timeout));
+	}//end of receiveDatagram()
+	
+	/*
+	 * byte[] receiveDatagramBytes(DatagramSocket clientSocket, int timeout)
+	 * This function receives one datagram and returns its bytes as they were sent.
+	 * 
+	 * clientSocket : DatagramSocket object which has the details of the client socket
+	 * timeout - Time in seconds to wait for the datagram
+	 * @return: the received datagram in byte form
+	 */
+	public static byte[] receiveDatagramBytes(DatagramSocket clientSocket, int timeout) throws Exception {
+		DatagramPacket receivedPacket = new DatagramPacket(datagramBuffer, datagramBuffer.length);
+		clientSocket.setSoTimeout(timeout*1000);
+		clientSocket.receive(receivedPacket);
+		byte[] receivedResponse = Arrays.copyOf(datagramBuffer, receivedPacket.getLength());
+		System.out.printf("\n\nThe received response is : \n%s", new String(receivedResponse));
+		return receivedResponse;
+	}//end of receiveDatagramBytes()
+	
+	/*
+	 * processBatchResponse(String fileName, String responseCode, String fileContent)
+	 * This function processes one file of a batch response based on its response code.
+	 * Errors of a single file are only reported, as the other files of the batch can still be shown.
+	 * 
+	 * fileName - The file
+	 * responseCode - The response code of the file
+	 * fileContent - The content of the file put together from its pieces
+	 */
+	public static void processBatchResponse(String fileName, String responseCode, String fileContent) {
+		if(responseCode.matches("0")) {
+			System.out.printf("\n\nThe contents of %s is: \n%s", fileName, fileContent);
+		}
+		else if(responseCode.matches("2")) {
+			System.out.print("\nError: Malformed request. The syntax of the file name " + fileName + " is not correct");
+		}
+		else if(responseCode.matches("3")) {
+			System.out.print("\nError: Non-existent file. The file " + fileName + " does not exist");
+		}
+	}//end of processBatchResponse()
+	
+	/*
+	 * processBatchError(String receivedResponse, String[] files, DatagramSocket clientSocket, ClientServerUtility utility)
+	 * This function handles a batch request which was rejected as a whole.
+	 * 
+	 * receivedResponse - The normal response with the error code sent by the server
+	 * files - The files of the rejected batch request
+	 */
+	public static void processBatchError(String receivedResponse, String[] files, DatagramSocket clientSocket, ClientServerUtility utility) throws Exception {
+		if(receivedResponse.split("\r\n")[1].matches("1")) {
+			//Integrity check failure. Re-send the whole batch if required.
+			Scanner inp = new Scanner(System.in);
+			System.out.print("\nError: Integrity check failure. The request has one or more bit errors");
+			System.out.print("\nDo you want to resend the request message? (yes/no)");
+			if(inp.next().matches("yes")) {
+				clientSocket.close();
+				batchMessageHandling(files, utility);
+			}
+			else {
+				System.exit(0);
+			}
+		}
+		else {
+			processResponse(receivedResponse, null, clientSocket, utility);//Codes 2 and 4 are handled like for a single request
+		}
+	}//end of processBatchError()
+	
 }// end of class Client
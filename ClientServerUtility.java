@@ -1,15 +1,37 @@
 package client;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketOption;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
 /*
  * class ClientServerUtility
  * This class contains utility methods for common functionalities
  * present both in Server and Client classes. 
  * 1. Convert message string to message bytes
  * 2. Check syntax of file name
- * 3. Get integrity value
+ * 3. Get integrity value (16 bit checksum or CRC32C)
  * 4. Compare the received integrity value with calculated one.
+ * 5. Size the datagrams and socket buffers from the MTU
  */
 public class ClientServerUtility {
+	static final int MAX_HEADER_LINES = 32; //A response is split only up to this many lines. The rest is the content.
+	static final int MAX_UDP_PAYLOAD = 65507; //Largest payload of a UDP datagram
+	static final int IP_UDP_HEADER_SIZE = 48; //IPv6 header (40) and UDP header (8). Also enough for IPv4 (20 + 8).
+	static final int DEFAULT_MTU = 1500; //Ethernet MTU. Used when the MTU can neither be configured nor found.
+	static final int MIN_PAYLOAD = 512; //The payload size is never probed below this
+	static final int RESPONSE_HEADER_ALLOWANCE = 256; //Room for the header lines and integrity value of a packetized response
+	static final int SOCKET_BUFFER_DATAGRAMS = 64; //SO_SNDBUF and SO_RCVBUF hold this many datagrams of the payload size
+	static final int DISCARD_PORT = 9; //Port the probe datagrams are sent to. Peers drop them.
+	private static final Map<InetAddress, Integer> maxPayloadSizes = new ConcurrentHashMap<InetAddress, Integer>(); //Payload size which avoids IP fragmentation, by peer. Probed once per peer.
 	
 	/*
 	 * messageInBytes(String assembledMessage)
@@ -75,34 +97,18 @@ public class ClientServerUtility {
 	 */
 	public String getIntegrityCheckValue(String assembledRequest) {
 		String valueInCharacterForm = ""; //integrity value in string form
-		int[] integrityCheckData = new int[8000];//The 16 bit words
-    int asciiValue1,asciiValue2; // 8 bit words which are concatenated to get 16 bit word 
-    String binary, binary1, binary2; // binary values of the ascii values.
-    int numberOfWords=0; //number of 16 bit words generated
+    int s=0; 
     for(int i=0;i<assembledRequest.length();i=i+2)
     {	
-      if(i>assembledRequest.length())
-    	  break; //when i goes greater than length of string.
-      asciiValue1=assembledRequest.charAt(i); //The even numbered characters
-      if((i==assembledRequest.length()-1)&&(assembledRequest.length()%2!=0))
-	      asciiValue2=0; //When there are odd number of characters, we append 0 to make it even.  	
-	    else
-	      asciiValue2=assembledRequest.charAt(i+1);//The odd numbered characters
-    
-      binary1 = Integer.toBinaryString(asciiValue1);//convert even numbered characters to binary
-      binary2 = Integer.toBinaryString(asciiValue2);//convert odd numbered characters to binary
-      binary1=String.format("%8s", binary1).replace(' ', '0');//If the binary is less than 8 bits, append 0s
-      binary2=String.format("%8s", binary2).replace(' ', '0');//If the binary is less than 8 bits, append 0s
-      binary=binary1+binary2;//append the consecutive even and odd binaries to get 16bit word
-      int binaryWordToInt = Integer.parseInt(binary, 2);//convert the combined binary(in string format) to int
-      integrityCheckData[i/2]=binaryWordToInt;//Store the combined values in an int array.
-      numberOfWords++;
-    }
-    int s=0; 
-    for (int i=0;i<numberOfWords;i++)
-    {
-    	int index=s^integrityCheckData[i];
-    	s=(7919*index)%65536;
+      int asciiValue1=assembledRequest.charAt(i); //The even numbered characters
+      int asciiValue2=(i+1<assembledRequest.length()) ? assembledRequest.charAt(i+1) : 0; //The odd numbered characters. When there are odd number of characters, we append 0 to make it even.
+      int binaryWordToInt; //16 bit word of the two characters
+      if(asciiValue1 <= 0xff && asciiValue2 <= 0xff)
+        binaryWordToInt = (asciiValue1<<8) | asciiValue2; //Both characters fit in 8 bits. Same as appending their 8 bit binaries.
+      else
+        binaryWordToInt = getWideWord(asciiValue1, asciiValue2); //Characters wider than 8 bits
+    	int index=s^binaryWordToInt;
+    	s=Math.floorMod(7919*index, 65536);//Same as % for the values ENTS/1.0 accepts. A wide word no longer gives a negative value.
     }
       valueInCharacterForm=String.valueOf(s);
       if(!valueInCharacterForm.matches("^[0-9]*$")) { 
@@ -112,41 +118,115 @@ public class ClientServerUtility {
 		return valueInCharacterForm;
 	}// end of getIntegrityCheckValue()
 	
+	/*
+	 * getWideWord(int asciiValue1, int asciiValue2)
+	 * Combines two characters into one word when one of them does not fit in 8 bits. The binaries of the characters
+	 * are padded to 8 bits and appended, so the word is longer than 16 bits.
+	 * 
+	 * @return: the combined word
+	 */
+	private int getWideWord(int asciiValue1, int asciiValue2) {
+		String binary1 = String.format("%8s", Integer.toBinaryString(asciiValue1)).replace(' ', '0');//If the binary is less than 8 bits, append 0s
+		String binary2 = String.format("%8s", Integer.toBinaryString(asciiValue2)).replace(' ', '0');
+		return (int)Long.parseLong(binary1+binary2, 2);//convert the combined binary(in string format) to int. Two characters above 0x7fff need more than 31 bits.
+	}//end of getWideWord()
+	
+	/*
+	 * getIntegrityCheckValue(String assembledMessage, String algorithm)
+	 * Calculates the integrity value of the message with the given algorithm. The algorithm is negotiated per
+	 * message with the "Integrity" header field. Without the field the 16 bit checksum above is used (ENTS/1.0 peers).
+	 * 
+	 * assembledMessage - the message whose integrity value has to be calculated.
+	 * algorithm - "crc32c", or null for the 16 bit checksum
+	 * @return: the calculated integrity value in string, null if the algorithm is not supported
+	 */
+	public String getIntegrityCheckValue(String assembledMessage, String algorithm) {
+		if(null == algorithm)
+			return getIntegrityCheckValue(assembledMessage);
+		if(algorithm.equals("crc32c")) {
+			CRC32C crc = new CRC32C();//CRC32C is computed with hardware instructions where the CPU has them
+			crc.update(assembledMessage.getBytes());
+			return String.valueOf(crc.getValue());
+		}
+		return null;
+	}//end of getIntegrityCheckValue()
+	
+	/*
+	 * getIntegrityCheckValue(byte[] message, int length, String algorithm)
+	 * Calculates the integrity value of a message whose content is raw bytes (range responses). Every byte counts
+	 * as one character, so for an ASCII message the value is the same as for the message as a String.
+	 * 
+	 * message - The bytes of the message, starting with the integrity check field
+	 * length - Number of bytes before the integrity check field
+	 * algorithm - "crc32c", or null for the 16 bit checksum
+	 * @return: the calculated integrity value in string, null if the algorithm is not supported
+	 */
+	public String getIntegrityCheckValue(byte[] message, int length, String algorithm) {
+		if(null == algorithm) {
+			int s = 0;
+			for(int i=0; i<length; i=i+2) {
+				int binaryWordToInt = ((message[i] & 0xff)<<8) | ((i+1 < length) ? (message[i+1] & 0xff) : 0);//Two bytes make one 16 bit word
+				s = (7919*(s^binaryWordToInt))%65536;
+			}
+			return String.valueOf(s);
+		}
+		if(algorithm.equals("crc32c")) {
+			CRC32C crc = new CRC32C();
+			crc.update(message, 0, length);
+			return String.valueOf(crc.getValue());
+		}
+		return null;
+	}//end of getIntegrityCheckValue()
+	
+	/*
+	 * isIntegrityAlgorithmSupported(String algorithm)
+	 * @return: true if the algorithm of the "Integrity" header field can be used, null stands for the 16 bit checksum
+	 */
+	public boolean isIntegrityAlgorithmSupported(String algorithm) {
+		return null == algorithm || algorithm.equals("crc32c");
+	}//end of isIntegrityAlgorithmSupported()
+	
 	/*
 	 * isIntegrityValueOfMessageCorrect(String receivedMessage, String typeofMessage)
 	 * Compares the integrity value received in the message and the calculated integrity value.
 	 * 
-	 *  typeOfMessage - Is the message a request or response
+	 *  typeOfMessage - Is the message a request, response, batch request or batch response
 	 *  @return: Returns true if both are same, else false.
 	 */
 	public Boolean isIntegrityValueOfMessageCorrect(String receivedMessage, String typeofMessage) {
-		String[] splitMessage = receivedMessage.split("\r\n");//split the received message with CR+LF as delimiter 
+		//split the received message with CR+LF as delimiter. For a response only the header lines are needed, the content is not split.
+		String[] splitMessage = typeofMessage.endsWith("response") ? receivedMessage.split("\r\n", MAX_HEADER_LINES) : receivedMessage.split("\r\n");
 		String messageWithoutIntegrityValue = "";//The part of message without integrity value. Required to calculate integrity value 
 		String integrity = "";
+		int headerFrom = 2; //Index of the first optional header field. Requests and batch requests have them after the 2nd line.
 		
-		if(typeofMessage.equals("response"))
+		if(typeofMessage.equals("response") || typeofMessage.equals("batch response"))
 		{
-			String contentAndIntegrityValue = "";//The file content and integrity value will be a single string
-		  for(int i=0; i<3; i++) {
-			  //Store the 1st line, response code and content length in the string first
-			  messageWithoutIntegrityValue = messageWithoutIntegrityValue + splitMessage[i] + "\r\n";
-		  }
-		  for(int i=3; i<splitMessage.length-1; i++) {
-			  //The content of the file and integrity value will be a single string as there is no CRLF at end of file content
-			  contentAndIntegrityValue = contentAndIntegrityValue + splitMessage[i] + "\r\n";
-		  }
-		  int contentLength = Integer.parseInt(splitMessage[2]); //length of file content
-		  String fileContent = contentAndIntegrityValue.substring(0, contentLength); //content of the requested file. Removing the appended integrity value
-		  messageWithoutIntegrityValue = messageWithoutIntegrityValue + fileContent;//append only the file content
-		  integrity = contentAndIntegrityValue.substring(contentLength);//Extract the integrity value
-		}
-		else if(typeofMessage.equals("request")) {
-		  integrity = splitMessage[2];//In request, integrity value is the 3rd field
-			messageWithoutIntegrityValue = splitMessage[0]+"\r\n"+splitMessage[1]+"\r\n";//Calculate the integrity value of the first 2 fields
+			//A response has 3 header lines (first line, response code, content length) plus the optional "Name: value"
+			//header fields after the response code. A batch response has 7
+			//(first line, sequence number, total, file name, response code, offset/file length, content length),
+			//also with the optional header fields after the response code.
+			headerFrom = typeofMessage.equals("response") ? 2 : 5;
+			int headerLines = (typeofMessage.equals("response") ? 3 : 7) + getHeaderCount(splitMessage, headerFrom);
+		  int contentLength = Integer.parseInt(splitMessage[headerLines-1]); //length of file content is the last header line
+		  int contentEnd = getContentStart(receivedMessage, headerLines) + contentLength;
+		  messageWithoutIntegrityValue = receivedMessage.substring(0, contentEnd);//The header lines and the file content
+		  //The integrity value follows the file content. A message read from the whole receive buffer ends with unused bytes after it.
+		  int integrityEnd = receivedMessage.indexOf("\r\n", contentEnd);
+		  integrity = receivedMessage.substring(contentEnd, integrityEnd < 0 ? receivedMessage.length() : integrityEnd);
+		}
+		else if(typeofMessage.equals("request") || typeofMessage.equals("batch request")) {
+			//In request, integrity value is the last field. It is the 3rd field unless optional header fields are present.
+			integrity = splitMessage[splitMessage.length-1];
+			for(int i=0; i<splitMessage.length-1; i++) {
+				//Calculate the integrity value of all the fields before the integrity value
+				messageWithoutIntegrityValue = messageWithoutIntegrityValue + splitMessage[i] + "\r\n";
+			}
 		}
 		
 		integrity = integrity.replaceAll("\\r\\n", "");//remove the CR+LF which is present after the integrity value
-		if(getIntegrityCheckValue(messageWithoutIntegrityValue).matches(integrity)) {
+		String algorithm = getHeaderValue(splitMessage, headerFrom, "Integrity");//Integrity algorithm negotiated for this message
+		if(integrity.equals(getIntegrityCheckValue(messageWithoutIntegrityValue, algorithm))) {
 			//The integrity value received as part of the response matches the calculated integrity value
 			System.out.print("\n\nThe calculated integrity value of the message matches the integrity check field of the response");
 			return true;
@@ -156,4 +236,220 @@ public class ClientServerUtility {
 		return false;
 	}//end of isIntegrityValueOfMessageCorrect()
 	
+	/*
+	 * isIntegrityValueOfRawResponseCorrect(byte[] receivedMessage, int length)
+	 * Compares the integrity value of a response whose content is raw bytes (range responses) with the calculated one.
+	 * The header lines are ASCII, so they are read with one character per byte and their indexes are byte positions.
+	 * 
+	 * receivedMessage - The received datagram
+	 * length - Number of bytes received
+	 * @return: true if both are same, false if not or if the header lines are damaged
+	 */
+	public boolean isIntegrityValueOfRawResponseCorrect(byte[] receivedMessage, int length) {
+		String headerView = new String(receivedMessage, 0, length, StandardCharsets.ISO_8859_1);//Only used to find the header lines
+		try {
+			String[] splitMessage = headerView.split("\r\n", MAX_HEADER_LINES);
+			int headerLines = 3 + getHeaderCount(splitMessage, 2);
+			int contentEnd = getContentStart(headerView, headerLines) + Integer.parseInt(splitMessage[headerLines-1]);
+			int integrityEnd = headerView.indexOf("\r\n", contentEnd);
+			String integrity = headerView.substring(contentEnd, integrityEnd < 0 ? length : integrityEnd);
+			if(integrity.equals(getIntegrityCheckValue(receivedMessage, contentEnd, getHeaderValue(splitMessage, 2, "Integrity")))) {
+				System.out.print("\n\nThe calculated integrity value of the message matches the integrity check field of the response");
+				return true;
+			}
+		}
+		catch(NumberFormatException | IndexOutOfBoundsException e) {
+			//A bit error in the header lines. Handled like a wrong integrity value.
+		}
+		System.out.print("\n\nThe calculated integrity value of the message does not match the integrity check field of the response");
+		return false;
+	}//end of isIntegrityValueOfRawResponseCorrect()
+	
+	/*
+	 * extractContent(String receivedMessage, int headerLines, int contentLength)
+	 * Extracts the file content of a response. The content starts after the header lines.
+	 * 
+	 * receivedMessage - The received response
+	 * headerLines - Number of lines before the file content
+	 * contentLength - The content length field of the response
+	 * @return: The file content
+	 */
+	public String extractContent(String receivedMessage, int headerLines, int contentLength) {
+		int contentStart = getContentStart(receivedMessage, headerLines);
+		return receivedMessage.substring(contentStart, contentStart+contentLength);
+	}//end of extractContent()
+	
+	/*
+	 * getContentStart(String receivedMessage, int headerLines)
+	 * Finds where the file content of a response starts, without splitting the content.
+	 * 
+	 * receivedMessage - The received response
+	 * headerLines - Number of lines before the file content
+	 * @return: Index of the first character of the file content
+	 */
+	public int getContentStart(String receivedMessage, int headerLines) {
+		int contentStart = 0;
+		for(int i=0; i<headerLines; i++)
+			contentStart = receivedMessage.indexOf("\r\n", contentStart) + 2;//Skip one header line with its CR+LF
+		return contentStart;
+	}//end of getContentStart()
+	
+	/*
+	 * getHeaderCount(String[] splitMessage, int from)
+	 * Counts the optional header fields of a message. Header fields are "Name: value" lines which
+	 * follow each other starting from the given field.
+	 * 
+	 * splitMessage - The message split with CR+LF as delimiter
+	 * from - Index of the field where the header fields start
+	 * @return: Number of header fields
+	 */
+	public int getHeaderCount(String[] splitMessage, int from) {
+		int count = 0;
+		while(from+count < splitMessage.length && splitMessage[from+count].matches("^[A-Za-z-]+: .*$"))
+			count++;
+		return count;
+	}//end of getHeaderCount()
+	
+	/*
+	 * getHeaderValue(String[] splitMessage, int from, String name)
+	 * Gets the value of an optional header field of a message.
+	 * 
+	 * splitMessage - The message split with CR+LF as delimiter
+	 * from - Index of the field where the header fields start
+	 * name - Name of the header field
+	 * @return: The value of the header field, null if the field is not present
+	 */
+	public String getHeaderValue(String[] splitMessage, int from, String name) {
+		int count = getHeaderCount(splitMessage, from);
+		for(int i=from; i<from+count; i++) {
+			if(splitMessage[i].startsWith(name + ": "))
+				return splitMessage[i].substring(name.length()+2);
+		}
+		return null;
+	}//end of getHeaderValue()
+	
+	/*
+	 * getMaxPayloadSize()
+	 * Gives the largest datagram payload which is sent to the server without IP fragmentation.
+	 * The client and the server run on this host, so the server is reached at InetAddress.getLocalHost().
+	 * 
+	 * @return: Payload size in bytes
+	 */
+	public int getMaxPayloadSize() {
+		try {
+			return getMaxPayloadSize(InetAddress.getLocalHost());
+		}
+		catch(IOException e) {
+			return getMaxPayloadSize(InetAddress.getLoopbackAddress());
+		}
+	}//end of getMaxPayloadSize()
+	
+	/*
+	 * getMaxPayloadSize(InetAddress peer)
+	 * Gives the largest datagram payload which is sent to the peer without IP fragmentation. The MTU is taken from
+	 * the "ents.mtu" system property, or else from the network interface which routes to the peer. Where the
+	 * IP_DONTFRAGMENT socket option is available (Java 19 and later), the size is checked by sending datagrams with
+	 * the don't fragment bit set towards the peer. The size is probed once per peer and then kept.
+	 * 
+	 * peer - The address the datagrams are sent to
+	 * @return: Payload size in bytes
+	 */
+	public int getMaxPayloadSize(InetAddress peer) {
+		return maxPayloadSizes.computeIfAbsent(peer, address -> {
+			int mtu = Integer.getInteger("ents.mtu", 0);//Configured MTU
+			if(mtu <= 0)
+				mtu = getInterfaceMtu(address);
+			int payload = Math.max(MIN_PAYLOAD, Math.min(mtu - IP_UDP_HEADER_SIZE, MAX_UDP_PAYLOAD));
+			return probeDontFragment(address, payload);
+		});
+	}//end of getMaxPayloadSize()
+	
+	/*
+	 * getInterfaceMtu(InetAddress peer)
+	 * Finds the network interface which routes to the peer: connecting a datagram socket chooses the route
+	 * without sending anything, and its local address belongs to that interface.
+	 * 
+	 * peer - The address the datagrams are sent to
+	 * @return: MTU of the interface, DEFAULT_MTU if it is not known or if a peer on another host would be
+	 *          reached over the loopback interface
+	 */
+	private int getInterfaceMtu(InetAddress peer) {
+		DatagramSocket routeSocket = null;
+		try {
+			routeSocket = new DatagramSocket();
+			routeSocket.connect(peer, DISCARD_PORT);
+			NetworkInterface networkInterface = NetworkInterface.getByInetAddress(routeSocket.getLocalAddress());
+			if(null != networkInterface && networkInterface.isLoopback() && !peer.isLoopbackAddress())
+				return DEFAULT_MTU;//The loopback MTU says nothing about the path to another host
+			if(null != networkInterface && networkInterface.getMTU() > 0)
+				return networkInterface.getMTU();
+		}
+		catch(IOException | UncheckedIOException e) {
+			System.out.print("\nThe MTU could not be found. " + e.getMessage());
+		}
+		finally {
+			if(null != routeSocket)
+				routeSocket.close();
+		}
+		return DEFAULT_MTU;
+	}//end of getInterfaceMtu()
+	
+	/*
+	 * probeDontFragment(InetAddress peer, int payload)
+	 * Sends datagrams with the don't fragment bit set to the discard port of the peer, from the given payload size
+	 * downwards, until one can be sent without fragmentation. A datagram larger than the path MTU known to this host
+	 * is refused by send().
+	 * 
+	 * peer - The address the datagrams are sent to
+	 * payload - The payload size found from the MTU
+	 * @return: The largest payload size which could be sent. The given size if IP_DONTFRAGMENT is not available.
+	 */
+	@SuppressWarnings("unchecked")
+	private int probeDontFragment(InetAddress peer, int payload) {
+		SocketOption<Boolean> dontFragment;
+		try {
+			//Looked up by reflection, as the option only exists from Java 19
+			dontFragment = (SocketOption<Boolean>) Class.forName("jdk.net.ExtendedSocketOptions").getField("IP_DONTFRAGMENT").get(null);
+		}
+		catch(ReflectiveOperationException e) {
+			return payload;
+		}
+		DatagramSocket probeSocket = null;
+		try {
+			probeSocket = new DatagramSocket();
+			probeSocket.setOption(dontFragment, true);
+			probeSocket.connect(peer, DISCARD_PORT);
+			while(payload > MIN_PAYLOAD) {
+				try {
+					probeSocket.send(new DatagramPacket(new byte[payload], payload));
+					break;//Sent without fragmentation
+				}
+				catch(IOException e) {
+					payload = Math.max(MIN_PAYLOAD, payload - 32);//Too large for the path. Try a smaller datagram.
+				}
+			}
+		}
+		catch(IOException | UncheckedIOException | UnsupportedOperationException e) {
+			//The option is not supported on this platform. Keep the size from the MTU.
+		}
+		finally {
+			if(null != probeSocket)
+				probeSocket.close();
+		}
+		return payload;
+	}//end of probeDontFragment()
+	
+	/*
+	 * configureSocket(DatagramSocket socket)
+	 * Sets SO_SNDBUF and SO_RCVBUF to hold SOCKET_BUFFER_DATAGRAMS datagrams of the payload size,
+	 * instead of the platform default.
+	 * 
+	 * socket - The socket to be configured
+	 */
+	public void configureSocket(DatagramSocket socket) throws IOException {
+		int bufferSize = SOCKET_BUFFER_DATAGRAMS * getMaxPayloadSize();
+		socket.setSendBufferSize(bufferSize);
+		socket.setReceiveBufferSize(bufferSize);
+	}//end of configureSocket()
+	
 }//end of class ClientServerUtility
@@ -112,4 +112,84 @@ public class ClientServerUtilityTest {
 		assertTrue(clientServerUtilityObj.isIntegrityValueOfMessageCorrect(mockDataWithIntegrityValue, "request"));
 	}//end of isIntegrityValueOfRequestMessageCorrectShouldReturnTrue()
 	
+	/*
+	 * isIntegrityValueOfBatchRequestMessageCorrectShouldReturnTrue()
+	 * This test checks if the integrity value of a "batch request" covers all the file names.
+	 */
+	@Test
+	public void isIntegrityValueOfBatchRequestMessageCorrectShouldReturnTrue() {
+		String mockBatchRequest = "ENTS/1.0 BatchRequest\r\n2\r\nfile_A.txt\r\nfile_B.txt\r\n34885\r\n";
+		assertTrue(clientServerUtilityObj.isIntegrityValueOfMessageCorrect(mockBatchRequest, "batch request"));
+		String tamperedBatchRequest = "ENTS/1.0 BatchRequest\r\n2\r\nfile_A.txt\r\nfile_C.txt\r\n34885\r\n";
+		assertFalse(clientServerUtilityObj.isIntegrityValueOfMessageCorrect(tamperedBatchRequest, "batch request"));
+	}//end of isIntegrityValueOfBatchRequestMessageCorrectShouldReturnTrue()
+	
+	/*
+	 * getHeaderValueShouldReturnValueOfHeaderField()
+	 * This test checks if the optional header fields between the response code and the content length are found,
+	 * and that the file content is never read as a header field.
+	 */
+	@Test
+	public void getHeaderValueShouldReturnValueOfHeaderField() {
+		String[] splitResponse = "ENTS/1.0 Response\r\n0\r\nRange: 0-9/20\r\n9\r\nName: abc21\r\n".split("\r\n");
+		assertEquals(1, clientServerUtilityObj.getHeaderCount(splitResponse, 2));
+		assertEquals("0-9/20", clientServerUtilityObj.getHeaderValue(splitResponse, 2, "Range"));
+		assertNull(clientServerUtilityObj.getHeaderValue(splitResponse, 2, "Name"));
+	}//end of getHeaderValueShouldReturnValueOfHeaderField()
+	
+	/*
+	 * getIntegrityCheckValueWithCrc32cShouldReturnCrc32c()
+	 * This test checks the CRC32C integrity value against the standard check value of "123456789".
+	 */
+	@Test
+	public void getIntegrityCheckValueWithCrc32cShouldReturnCrc32c() {
+		assertEquals("3808858755", clientServerUtilityObj.getIntegrityCheckValue("123456789", "crc32c"));
+		assertEquals("11482", clientServerUtilityObj.getIntegrityCheckValue("ENTS/1.0 Request\r\nfileName\r\n", null));
+		assertNull(clientServerUtilityObj.getIntegrityCheckValue("123456789", "md5"));
+	}//end of getIntegrityCheckValueWithCrc32cShouldReturnCrc32c()
+	
+	/*
+	 * isIntegrityValueOfCrc32cRequestMessageCorrectShouldReturnTrue()
+	 * This test checks if the integrity value of a request is checked with the algorithm of its "Integrity" header field.
+	 */
+	@Test
+	public void isIntegrityValueOfCrc32cRequestMessageCorrectShouldReturnTrue() {
+		String mockCrc32cRequest = "ENTS/1.0 Request\r\nfileName\r\nIntegrity: crc32c\r\n3409173491\r\n";
+		assertTrue(clientServerUtilityObj.isIntegrityValueOfMessageCorrect(mockCrc32cRequest, "request"));
+		String mockUnknownAlgorithmRequest = "ENTS/1.0 Request\r\nfileName\r\nIntegrity: md5\r\n3409173491\r\n";
+		assertFalse(clientServerUtilityObj.isIntegrityValueOfMessageCorrect(mockUnknownAlgorithmRequest, "request"));
+	}//end of isIntegrityValueOfCrc32cRequestMessageCorrectShouldReturnTrue()
+	
+	/*
+	 * isIntegrityValueOfResponseMessageCorrectShouldReturnTrue()
+	 * This test checks the integrity value of a "response" whose content has CR+LF in it. The response is read from the
+	 * whole receive buffer, so unused bytes follow the integrity value.
+	 */
+	@Test
+	public void isIntegrityValueOfResponseMessageCorrectShouldReturnTrue() {
+		String mockResponse = "ENTS/1.0 Response\r\n0\r\n9\r\nab\r\ncd\r\ne44348\r\n";
+		assertTrue(clientServerUtilityObj.isIntegrityValueOfMessageCorrect(mockResponse, "response"));
+		assertTrue(clientServerUtilityObj.isIntegrityValueOfMessageCorrect(mockResponse + new String(new byte[64]), "response"));
+		assertEquals("ab\r\ncd\r\ne", clientServerUtilityObj.extractContent(mockResponse, 3, 9));
+	}//end of isIntegrityValueOfResponseMessageCorrectShouldReturnTrue()
+	
+	/*
+	 * isIntegrityValueOfRawResponseCorrectShouldReturnTrue()
+	 * This test checks the integrity value of a range response whose content ends inside a UTF-8 character.
+	 * The content length counts bytes and the integrity value is calculated over the bytes.
+	 */
+	@Test
+	public void isIntegrityValueOfRawResponseCorrectShouldReturnTrue() throws Exception {
+		byte[] content = java.util.Arrays.copyOf("h\u00e9llo".getBytes("UTF-8"), 2);//'h' and the first byte of 'e' with accent
+		java.io.ByteArrayOutputStream response = new java.io.ByteArrayOutputStream();
+		response.write("ENTS/1.0 Response\r\n0\r\nIntegrity: crc32c\r\nRange: 0-2/6\r\n2\r\n".getBytes());
+		response.write(content);
+		String integrityValue = clientServerUtilityObj.getIntegrityCheckValue(response.toByteArray(), response.size(), "crc32c");
+		response.write((integrityValue + "\r\n").getBytes());
+		assertTrue(clientServerUtilityObj.isIntegrityValueOfRawResponseCorrect(response.toByteArray(), response.size()));
+		byte[] corruptedResponse = response.toByteArray();
+		corruptedResponse[corruptedResponse.length - integrityValue.length() - 3] ^= 1;//Flip a bit of the content
+		assertFalse(clientServerUtilityObj.isIntegrityValueOfRawResponseCorrect(corruptedResponse, corruptedResponse.length));
+	}//end of isIntegrityValueOfRawResponseCorrectShouldReturnTrue()
+	
 }//end of test class ClientServerUtilityTest
@@ -3,6 +3,7 @@ package client;
 import static org.junit.Assert.*;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.util.TreeMap;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -72,6 +73,7 @@ public class ClientTest {
       //Mocking the behaviors of the mock objects . Hence if the below methods are called on mocks, then you can send any value you want
       Mockito.when(utilityMock.messageInBytes(Mockito.anyString())).thenReturn(requestBytesMock ); //for handleRequest()
       Mockito.when(dataPacketMock.getData()).thenReturn(requestBytesMock ); // in receiveResponseFromServer()
+      Mockito.when(dataPacketMock.getLength()).thenReturn(requestBytesMock.length);
       Mockito.when(utilityMock.isIntegrityValueOfMessageCorrect(Mockito.anyString(),Mockito.anyString())).thenReturn(true);
            
       //Calling the test method
@@ -115,6 +117,144 @@ public class ClientTest {
   	}//end of generateRequestMessageShouldReturnMessage()
   	
   	
+  	/*
+  	 * generateBatchRequestMessageShouldReturnMessage()
+  	 * This method tests generateBatchRequestMessage() and checks if the file count, all the file names
+  	 * and a single integrity value are part of the batch request.
+  	 */
+  	@Test
+  	public void generateBatchRequestMessageShouldReturnMessage() throws Exception {
+  		ClientServerUtility utilityMock = Mockito.mock(ClientServerUtility.class); //Create a mock object of ClientServerUtility class
+  		String assembledRequest = "ENTS/1.0 BatchRequest\r\n2\r\nfile_A.txt\r\nfile_B.txt\r\n"; //The batch request without the integrity value
+  		Mockito.when(utilityMock.getIntegrityCheckValue(assembledRequest)).thenReturn("34885");
+  		String expectedRequest = assembledRequest + "34885\r\n";
+  		assertEquals(expectedRequest, Client.generateBatchRequestMessage(new String[] {"file_A.txt", "file_B.txt"}, utilityMock));
+  	}//end of generateBatchRequestMessageShouldReturnMessage()
+  	
+  	
+  	/*
+  	 * generateBatchRequestMessageWithCrc32cShouldContainIntegrityHeader()
+  	 * This method checks if the chosen integrity algorithm is announced in the "Integrity" header field
+  	 * after the file count and used for the integrity value of the batch request.
+  	 */
+  	@Test
+  	public void generateBatchRequestMessageWithCrc32cShouldContainIntegrityHeader() throws Exception {
+  		ClientServerUtility utilityMock = Mockito.mock(ClientServerUtility.class); //Create a mock object of ClientServerUtility class
+  		String assembledRequest = "ENTS/1.0 BatchRequest\r\n2\r\nIntegrity: crc32c\r\nfile_A.txt\r\nfile_B.txt\r\n"; //The batch request without the integrity value
+  		Mockito.when(utilityMock.getIntegrityCheckValue(assembledRequest, "crc32c")).thenReturn("3409173491");
+  		Client.integrityAlgorithm = "crc32c";
+  		try {
+  			assertEquals(assembledRequest + "3409173491\r\n", Client.generateBatchRequestMessage(new String[] {"file_A.txt", "file_B.txt"}, utilityMock));
+  		}
+  		finally {
+  			Client.integrityAlgorithm = null;
+  		}
+  	}//end of generateBatchRequestMessageWithCrc32cShouldContainIntegrityHeader()
+  	
+  	
+  	/*
+  	 * getMissingRangesShouldListGapsBetweenPieces()
+  	 * This method checks that the ranges before, between and after the received pieces are listed
+  	 * as <offset>-<length>, that they are limited to the given number, and that nothing is listed for a complete file.
+  	 */
+  	@Test
+  	public void getMissingRangesShouldListGapsBetweenPieces() throws Exception {
+  		TreeMap<Integer, String> pieces = new TreeMap<Integer, String>(); //Received pieces by offset
+  		pieces.put(4, "efgh");
+  		pieces.put(12, "mn");
+  		assertEquals(";0-4,8-4,14-6", Client.getMissingRanges(pieces, 20, 16));
+  		assertEquals(";0-4,8-12", Client.getMissingRanges(pieces, 20, 2));//The last range covers the parts after it
+  		pieces.put(0, "abcd");
+  		pieces.put(8, "ijkl");
+  		pieces.put(14, "opqrst");
+  		assertEquals("", Client.getMissingRanges(pieces, 20, 16));
+  	}//end of getMissingRangesShouldListGapsBetweenPieces()
+  	
+  	
+  	/*
+  	 * generateRangeRequestMessageShouldReturnMessage()
+  	 * This method tests generateRangeRequestMessage() and checks if the "Range" header field
+  	 * is placed between the file name and the integrity value.
+  	 */
+  	@Test
+  	public void generateRangeRequestMessageShouldReturnMessage() throws Exception {
+  		ClientServerUtility utilityMock = Mockito.mock(ClientServerUtility.class); //Create a mock object of ClientServerUtility class
+  		String assembledRequest = "ENTS/1.0 Request\r\n" + fileName + "\r\nRange: 8192-8192\r\n"; //The request without the integrity value
+  		Mockito.when(utilityMock.getIntegrityCheckValue(assembledRequest)).thenReturn("21");
+  		assertEquals(assembledRequest + "21\r\n", Client.generateRangeRequestMessage(fileName, 8192, 8192, 0, utilityMock));
+  	}//end of generateRangeRequestMessageShouldReturnMessage()
+  	
+  	
+  	/*
+  	 * generateConditionalRequestMessageShouldReturnMessage()
+  	 * This method tests generateConditionalRequestMessage() and checks if the validator of the cached copy
+  	 * is sent in the "If-None-Match" header field.
+  	 */
+  	@Test
+  	public void generateConditionalRequestMessageShouldReturnMessage() throws Exception {
+  		ClientServerUtility utilityMock = Mockito.mock(ClientServerUtility.class); //Create a mock object of ClientServerUtility class
+  		String assembledRequest = "ENTS/1.0 Request\r\n" + fileName + "\r\nIf-None-Match: 18f2a3c4d10-e\r\n"; //The request without the integrity value
+  		Mockito.when(utilityMock.getIntegrityCheckValue(assembledRequest)).thenReturn("21");
+  		assertEquals(assembledRequest + "21\r\n", Client.generateConditionalRequestMessage(fileName, "18f2a3c4d10-e", 0, utilityMock));
+  	}//end of generateConditionalRequestMessageShouldReturnMessage()
+  	
+  	
+  	/*
+  	 * generateRequestMessageShouldContainSchedulingHeaders()
+  	 * This method checks if the time the client waits and the priority class are sent
+  	 * in the "Timeout" and "Priority" header fields, so that the server can schedule the request.
+  	 */
+  	@Test
+  	public void generateRequestMessageShouldContainSchedulingHeaders() throws Exception {
+  		ClientServerUtility utilityMock = Mockito.mock(ClientServerUtility.class); //Create a mock object of ClientServerUtility class
+  		String assembledRequest = "ENTS/1.0 Request\r\n" + fileName + "\r\nTimeout: 2000\r\nPriority: high\r\nRange: 0-8192\r\n";
+  		Mockito.when(utilityMock.getIntegrityCheckValue(assembledRequest)).thenReturn("21");
+  		Client.requestPriority = "high";
+  		Client.sendTimeout = true;
+  		try {
+  			assertEquals(assembledRequest + "21\r\n", Client.generateRequestMessage(fileName, "Range: 0-8192\r\n", 2000, utilityMock));
+  		}
+  		finally {
+  			Client.requestPriority = null;
+  			Client.sendTimeout = false;
+  		}
+  	}//end of generateRequestMessageShouldContainSchedulingHeaders()
+  	
+  	
+  	/*
+  	 * generateRequestMessageWithTimeoutShouldContainTimeoutHeader()
+  	 * This method checks if the request for the whole file tells the server how long the client waits
+  	 * when the "timeout" argument was given, so that the server does not handle it after the client has resent it.
+  	 */
+  	@Test
+  	public void generateRequestMessageWithTimeoutShouldContainTimeoutHeader() throws Exception {
+  		ClientServerUtility utilityMock = Mockito.mock(ClientServerUtility.class); //Create a mock object of ClientServerUtility class
+  		String assembledRequest = "ENTS/1.0 Request\r\n" + fileName + "\r\nTimeout: 4000\r\n";
+  		Mockito.when(utilityMock.getIntegrityCheckValue(assembledRequest)).thenReturn("21");
+  		Client.sendTimeout = true;
+  		try {
+  			assertEquals(assembledRequest + "21\r\n", Client.generateRequestMessage(fileName, 4000, utilityMock));
+  		}
+  		finally {
+  			Client.sendTimeout = false;
+  		}
+  	}//end of generateRequestMessageWithTimeoutShouldContainTimeoutHeader()
+  	
+  	
+  	/*
+  	 * generateRequestMessageWithoutArgumentsShouldBePlainRequest()
+  	 * This method checks if the default client sends a plain ENTS/1.0 request without the "Timeout"
+  	 * header field, which an ENTS/1.0 server would read as the integrity value.
+  	 */
+  	@Test
+  	public void generateRequestMessageWithoutArgumentsShouldBePlainRequest() throws Exception {
+  		ClientServerUtility utilityMock = Mockito.mock(ClientServerUtility.class); //Create a mock object of ClientServerUtility class
+  		String assembledRequest = "ENTS/1.0 Request\r\n" + fileName + "\r\n";
+  		Mockito.when(utilityMock.getIntegrityCheckValue(assembledRequest)).thenReturn("21");
+  		assertEquals(assembledRequest + "21\r\n", Client.generateRequestMessage(fileName, 4000, utilityMock));
+  	}//end of generateRequestMessageWithoutArgumentsShouldBePlainRequest()
+  	
+  	
   	/*
   	 * sendRequestToServerShouldReturnDataGramSocketObj()
   	 * This method tests if the request is sent and the returns the socket details 
@@ -147,13 +287,14 @@ public class ClientTest {
        
         //Mocking the behaviors of the mock objects . Hence if the below methods are called on mocks, then you can send any value you want
         Mockito.when(dataPacketMock.getData()).thenReturn(responseBytesMock ); // in receiveResponseFromServer()
+        Mockito.when(dataPacketMock.getLength()).thenReturn(responseBytesMock.length);
         
-  			assertEquals(new String(responseBytesMock), clientObj.handleResponse(clientSocketMock, fileName, utilityMock));
+  			assertEquals(new String(responseBytesMock), clientObj.handleResponse(clientSocketMock, 1));
   		} //end of handleResponseShouldReturnReceivedResponse()
   	
       
   		/*
-       * This method checks if receiveResponse() receives the expected response BYTES from the server.
+       * This method checks if receiveResponse() receives the expected response BYTES from the server, without the rest of the buffer.
        */
   		@Test
   		public void receiveResponseFromServerShouldReturnResponseBytes() throws Exception {
@@ -169,8 +310,9 @@ public class ClientTest {
 
         //Mocking the behaviors of the mock objects . Hence if the below methods are called on mocks, then you can send any value you want
         Mockito.when(dataPacketMock.getData()).thenReturn(responseBytesMock); // in receiveResponseFromServer()
+        Mockito.when(dataPacketMock.getLength()).thenReturn(responseBytesMock.length);
         
-  			assertEquals(responseBytesMock, clientObj.receiveResponseFromServer(clientSocketMock, fileName, utilityMock));  			
+  			assertArrayEquals(responseBytesMock, clientObj.receiveResponseFromServer(clientSocketMock, 1));  			
   		} //end of receiveResponseFromServerShouldReturnResponseBytes()
   	 
 }// end of Test class ClientTest.java
@@ -0,0 +1,56 @@
+package client;
+
+/*
+ * class IntegrityBenchmark
+ * This class compares the speed of the two integrity algorithms: the 16 bit checksum of ENTS/1.0
+ * and CRC32C. Messages of different sizes are hashed many times after a warm-up, so that the
+ * JIT compiler has optimised both algorithms before they are timed.
+ * Run it with: java client.IntegrityBenchmark
+ */
+public class IntegrityBenchmark {
+	static int[] messageSizes = {64, 1024, 16384, 60000}; //Message sizes in characters. 60000 is about the largest range response.
+	static long sink = 0; //Results are added here, so that the JIT compiler cannot remove the hashing
+
+	public static void main(String[] args) {
+		ClientServerUtility utility = new ClientServerUtility();
+		System.out.printf("%10s %20s %20s%n", "size", "checksum (ns/op)", "crc32c (ns/op)");
+		for(int size : messageSizes) {
+			String message = generateMessage(size);
+			int iterations = Math.max(200, 20000000/size); //Hash about the same number of characters for every size
+			timeAlgorithm(utility, message, null, iterations); //Warm-up
+			timeAlgorithm(utility, message, "crc32c", iterations);
+			long checksumTime = timeAlgorithm(utility, message, null, iterations);
+			long crc32cTime = timeAlgorithm(utility, message, "crc32c", iterations);
+			System.out.printf("%10d %20d %20d%n", size, checksumTime/iterations, crc32cTime/iterations);
+		}
+	}//end of main()
+
+	/*
+	 * long timeAlgorithm(ClientServerUtility utility, String message, String algorithm, int iterations)
+	 * This function hashes the message the given number of times.
+	 * 
+	 * algorithm - "crc32c", or null for the 16 bit checksum
+	 * @return: The total time in nanoseconds
+	 */
+	static long timeAlgorithm(ClientServerUtility utility, String message, String algorithm, int iterations) {
+		long start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+			sink += utility.getIntegrityCheckValue(message, algorithm).length();
+		return System.nanoTime() - start;
+	}//end of timeAlgorithm()
+
+	/*
+	 * String generateMessage(int size)
+	 * This function generates a response message with printable file content.
+	 * 
+	 * size - Number of characters of the message
+	 * @return: The generated message
+	 */
+	static String generateMessage(int size) {
+		StringBuilder message = new StringBuilder("ENTS/1.0 Response\r\n0\r\n" + size + "\r\n");
+		for(int i=0; message.length()<size; i++)
+			message.append((char)('a' + i%26)).append(i%64 == 63 ? "\r\n" : "");
+		return message.substring(0, size);
+	}//end of generateMessage()
+
+}//end of class IntegrityBenchmark
@@ -0,0 +1,164 @@
+package server;
+
+import java.net.DatagramPacket;
+import java.util.PriorityQueue;
+
+/*
+ * class RequestScheduler
+ * This class holds the received requests until the server handles them.
+ * Requests are handled by priority class first, then by earliest deadline, then in the order they arrived.
+ * A request whose deadline has passed is dropped, as its client has already stopped waiting and resent it.
+ * A waiting request is also dropped when a newer request for the same file arrives from the same client address
+ * and port, as that is a retransmission: the client only waits for the response to its latest attempt.
+ * The queue is bounded: when it is full, the least urgent request is dropped.
+ */
+public class RequestScheduler {
+	static final int HIGH = 0, NORMAL = 1, LOW = 2; //Priority classes. A lower value is handled first.
+
+	private final PriorityQueue<ScheduledRequest> queue = new PriorityQueue<ScheduledRequest>(); //Waiting requests, most urgent first
+	private final int capacity; //Largest number of waiting requests
+	private long arrivalCount = 0; //Number of offered requests. Keeps requests with the same priority and deadline in arrival order.
+	private long droppedCount = 0; //Number of requests dropped because their deadline passed or the queue was full
+
+	/*
+	 * class ScheduledRequest
+	 * A received request with its scheduling information.
+	 */
+	public static class ScheduledRequest implements Comparable<ScheduledRequest> {
+		final String receivedDataString; //The received request
+		final DatagramPacket receivedData; //Used to get the IP and port of the client
+		final long arrivalTime; //System.nanoTime() when the request was received
+		final long deadline; //System.nanoTime() after which the client no longer waits. Long.MAX_VALUE if there is no deadline.
+		final int priority; //Priority class
+		final RequestTrace trace; //Time the request spends in every stage
+		final String retransmissionKey; //Client address, port and requested file. Equal for the attempts of one request.
+		long sequence; //Arrival order, set by offer()
+
+		public ScheduledRequest(String receivedDataString, DatagramPacket receivedData, long arrivalTime, long deadline, int priority, RequestTrace trace) {
+			this.receivedDataString = receivedDataString;
+			this.receivedData = receivedData;
+			this.arrivalTime = arrivalTime;
+			this.deadline = deadline;
+			this.priority = priority;
+			this.trace = trace;
+			String[] splitRequest = receivedDataString.split("\r\n", 3);//The 2nd line is the file name
+			this.retransmissionKey = receivedData.getAddress() + ":" + receivedData.getPort() + "/" + ((splitRequest.length > 1) ? splitRequest[1] : "");
+		}
+
+		/*
+		 * isExpired(long now)
+		 * @return: true if the client has stopped waiting for the response
+		 */
+		boolean isExpired(long now) {
+			return deadline != Long.MAX_VALUE && now - deadline > 0;
+		}
+
+		public int compareTo(ScheduledRequest other) {
+			if(priority != other.priority)
+				return Integer.compare(priority, other.priority);
+			if(deadline != other.deadline)
+				return (deadline == Long.MAX_VALUE || (other.deadline != Long.MAX_VALUE && deadline - other.deadline > 0)) ? 1 : -1;
+			return Long.compare(sequence, other.sequence);
+		}
+	}//end of class ScheduledRequest
+
+	public RequestScheduler(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/*
+	 * getPriorityClass(String priority)
+	 * Converts the "Priority" header field of a request to a priority class.
+	 *
+	 * priority - "high", "normal" or "low". null when the request has no "Priority" header field.
+	 * @return: The priority class. NORMAL if the field is missing or unknown.
+	 */
+	public static int getPriorityClass(String priority) {
+		if("high".equals(priority))
+			return HIGH;
+		if("low".equals(priority))
+			return LOW;
+		return NORMAL;
+	}//end of getPriorityClass()
+
+	/*
+	 * offer(ScheduledRequest request)
+	 * Adds a received request to the queue. A request whose deadline has already passed is dropped, so that it
+	 * never takes the place of a waiting request. An older attempt of the same request is dropped, as the client has
+	 * stopped waiting for it. If the queue is full, expired requests are dropped first.
+	 * If it is still full, the least urgent of the waiting requests and the new request is dropped.
+	 *
+	 * @return: false if the new request was dropped
+	 */
+	public synchronized boolean offer(ScheduledRequest request) {
+		request.sequence = arrivalCount++;
+		long now = System.nanoTime();
+		if(request.isExpired(now)) {
+			droppedCount++;
+			return false;
+		}
+		if(queue.removeIf(waiting -> waiting.retransmissionKey.equals(request.retransmissionKey))) {
+			droppedCount++;//At most one older attempt is waiting, as each attempt replaces the one before
+			System.out.print("\nDropped an older attempt of a retransmitted request.");
+		}
+		if(queue.size() >= capacity)
+			dropExpired(now);
+		if(queue.size() >= capacity) {
+			ScheduledRequest leastUrgent = request;
+			for(ScheduledRequest waiting : queue) {
+				if(waiting.compareTo(leastUrgent) > 0)
+					leastUrgent = waiting;
+			}
+			droppedCount++;
+			if(leastUrgent == request)
+				return false;
+			queue.remove(leastUrgent);
+		}
+		queue.add(request);
+		notifyAll();
+		return true;
+	}//end of offer()
+
+	/*
+	 * take()
+	 * Waits for the most urgent request whose deadline has not passed. Expired requests are dropped on the way.
+	 *
+	 * @return: The request which has to be handled next
+	 */
+	public synchronized ScheduledRequest take() throws InterruptedException {
+		while(true) {
+			while(queue.isEmpty())
+				wait();
+			ScheduledRequest request = queue.poll();
+			if(!request.isExpired(System.nanoTime()))
+				return request;
+			droppedCount++;
+			System.out.printf("\nDropped a request which waited %d ms. Its client is no longer waiting for the response.", (System.nanoTime()-request.arrivalTime)/1000000);
+		}
+	}//end of take()
+
+	/*
+	 * dropExpired(long now)
+	 * Removes all the requests whose deadline has passed.
+	 */
+	private void dropExpired(long now) {
+		int sizeBefore = queue.size();
+		queue.removeIf(waiting -> waiting.isExpired(now));
+		droppedCount = droppedCount + sizeBefore - queue.size();
+	}//end of dropExpired()
+
+	/*
+	 * @return: Number of requests waiting to be handled
+	 */
+	public synchronized int size() {
+		return queue.size();
+	}
+
+	/*
+	 * @return: Number of requests dropped so far
+	 */
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+
+}//end of class RequestScheduler
@@ -0,0 +1,124 @@
+package server;
+import static org.junit.Assert.*;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import org.junit.Test;
+
+/*
+ * class RequestSchedulerTest
+ * Tests of the order in which the RequestScheduler hands out requests and of the requests it drops.
+ */
+public class RequestSchedulerTest {
+
+	static final long NO_DEADLINE = Long.MAX_VALUE; //Deadline of a request without "Timeout" header field
+	int nextClientPort = 49152; //Client port of the next request which is not a retransmission
+
+	/*
+	 * ScheduledRequest request(String file, long deadline, int priority)
+	 * @return: A request for the file, received now from a client port which no other request used
+	 */
+	RequestScheduler.ScheduledRequest request(String file, long deadline, int priority) {
+		return request(file, deadline, priority, nextClientPort++);
+	}
+
+	/*
+	 * ScheduledRequest request(String file, long deadline, int priority, int clientPort)
+	 * @return: A request for the file, received now from the client port
+	 */
+	RequestScheduler.ScheduledRequest request(String file, long deadline, int priority, int clientPort) {
+		long now = System.nanoTime();
+		DatagramPacket receivedData = new DatagramPacket(new byte[1], 1, InetAddress.getLoopbackAddress(), clientPort);
+		return new RequestScheduler.ScheduledRequest("ENTS/1.0 Request\r\n" + file + "\r\n21\r\n", receivedData, now, deadline, priority, new RequestTrace(now));
+	}
+
+	/*
+	 * takeShouldReturnMostUrgentRequestFirst()
+	 * This test checks that requests are handed out by priority class, then by earliest deadline, then in arrival order.
+	 */
+	@Test
+	public void takeShouldReturnMostUrgentRequestFirst() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(8);
+		long now = System.nanoTime();
+		RequestScheduler.ScheduledRequest low = request("file_A.txt", now + 1000000000L, RequestScheduler.LOW);
+		RequestScheduler.ScheduledRequest noDeadline = request("file_B.txt", NO_DEADLINE, RequestScheduler.NORMAL);
+		RequestScheduler.ScheduledRequest lateDeadline = request("file_C.txt", now + 2000000000L, RequestScheduler.NORMAL);
+		RequestScheduler.ScheduledRequest earlyDeadline = request("file_A.txt", now + 1000000000L, RequestScheduler.NORMAL);
+		RequestScheduler.ScheduledRequest high = request("file_B.txt", NO_DEADLINE, RequestScheduler.HIGH);
+		for(RequestScheduler.ScheduledRequest request : new RequestScheduler.ScheduledRequest[] {low, noDeadline, lateDeadline, earlyDeadline, high})
+			assertTrue(scheduler.offer(request));
+		assertSame(high, scheduler.take());
+		assertSame(earlyDeadline, scheduler.take());
+		assertSame(lateDeadline, scheduler.take());
+		assertSame(noDeadline, scheduler.take());
+		assertSame(low, scheduler.take());
+		assertEquals(0, scheduler.getDroppedCount());
+	}//end of takeShouldReturnMostUrgentRequestFirst()
+
+	/*
+	 * fullQueueShouldDropLeastUrgentRequest()
+	 * This test checks that a full queue drops the least urgent of the waiting requests and the new request.
+	 */
+	@Test
+	public void fullQueueShouldDropLeastUrgentRequest() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(2);
+		RequestScheduler.ScheduledRequest low = request("file_A.txt", NO_DEADLINE, RequestScheduler.LOW);
+		RequestScheduler.ScheduledRequest normal = request("file_B.txt", NO_DEADLINE, RequestScheduler.NORMAL);
+		assertTrue(scheduler.offer(low));
+		assertTrue(scheduler.offer(normal));
+		assertTrue(scheduler.offer(request("file_C.txt", NO_DEADLINE, RequestScheduler.HIGH)));//Takes the place of the low priority request
+		assertFalse(scheduler.offer(request("file_C.txt", NO_DEADLINE, RequestScheduler.LOW)));//Less urgent than all the waiting requests
+		assertEquals(2, scheduler.size());
+		assertEquals(2, scheduler.getDroppedCount());
+		scheduler.take();
+		assertSame(normal, scheduler.take());
+	}//end of fullQueueShouldDropLeastUrgentRequest()
+
+	/*
+	 * expiredRequestShouldNotTakePlaceOfWaitingRequest()
+	 * This test checks that a request whose deadline has already passed is dropped when it is offered, even though
+	 * its deadline is earlier than the deadline of every waiting request.
+	 */
+	@Test
+	public void expiredRequestShouldNotTakePlaceOfWaitingRequest() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(1);
+		RequestScheduler.ScheduledRequest waiting = request("file_A.txt", System.nanoTime() + 60000000000L, RequestScheduler.NORMAL);
+		assertTrue(scheduler.offer(waiting));
+		assertFalse(scheduler.offer(request("file_B.txt", System.nanoTime() - 1, RequestScheduler.NORMAL)));
+		assertEquals(1, scheduler.getDroppedCount());
+		assertSame(waiting, scheduler.take());
+	}//end of expiredRequestShouldNotTakePlaceOfWaitingRequest()
+
+	/*
+	 * retransmissionShouldReplaceOlderAttempt()
+	 * This test checks that a newer request for the same file from the same client address and port replaces the
+	 * waiting attempt, while requests from another port or for another file stay queued.
+	 */
+	@Test
+	public void retransmissionShouldReplaceOlderAttempt() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(8);
+		assertTrue(scheduler.offer(request("file_A.txt", NO_DEADLINE, RequestScheduler.HIGH, 50000)));
+		assertTrue(scheduler.offer(request("file_B.txt", NO_DEADLINE, RequestScheduler.NORMAL, 50000)));//Another file
+		assertTrue(scheduler.offer(request("file_A.txt", NO_DEADLINE, RequestScheduler.NORMAL, 50001)));//Another client
+		RequestScheduler.ScheduledRequest secondAttempt = request("file_A.txt", NO_DEADLINE, RequestScheduler.HIGH, 50000);
+		assertTrue(scheduler.offer(secondAttempt));
+		assertEquals(3, scheduler.size());
+		assertEquals(1, scheduler.getDroppedCount());
+		assertSame(secondAttempt, scheduler.take());
+	}//end of retransmissionShouldReplaceOlderAttempt()
+
+	/*
+	 * takeShouldDropExpiredRequests()
+	 * This test checks that a request whose deadline passed while it was waiting is not handed out.
+	 */
+	@Test
+	public void takeShouldDropExpiredRequests() throws Exception {
+		RequestScheduler scheduler = new RequestScheduler(8);
+		assertTrue(scheduler.offer(request("file_A.txt", System.nanoTime() + 1000000L, RequestScheduler.HIGH)));//1ms
+		RequestScheduler.ScheduledRequest noDeadline = request("file_B.txt", NO_DEADLINE, RequestScheduler.LOW);
+		assertTrue(scheduler.offer(noDeadline));
+		Thread.sleep(10);
+		assertSame(noDeadline, scheduler.take());
+		assertEquals(1, scheduler.getDroppedCount());
+	}//end of takeShouldDropExpiredRequests()
+
+}//end of test class RequestSchedulerTest
@@ -0,0 +1,155 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * class RequestTrace
+ * This class records where the time of one request went. The server marks the end of every stage with
+ * System.nanoTime(), and finish() puts the trace into a ring buffer of the latest requests.
+ * A request slower than the "ents.slowRequestMs" system property (100ms by default) is logged with its breakdown.
+ * At most one slow request is logged per second; the others are only counted. If the JDK has Java Flight Recorder,
+ * every trace is also committed as a RequestTraceEvent, which costs nothing while no recording is running.
+ *
+ * Stages:
+ *   receive - from receiving the packet until the request is queued (parsing the header fields)
+ *   queue   - waiting in the RequestScheduler
+ *   code    - generateResponseCode(), including the integrity check of the request
+ *   read    - reading the file. Range and conditional responses are assembled while reading.
+ *   message - assembling the response, including its integrity value
+ *   encode  - logging the response and converting it to bytes
+ *   send    - sending the datagrams
+ * A stage which a request does not have (e.g. message for a response from the snapshot) takes 0ns.
+ */
+public class RequestTrace {
+	static final int RECEIVE = 0, QUEUE = 1, CODE = 2, READ = 3, MESSAGE = 4, ENCODE = 5, SEND = 6; //Stages, in order
+	static final String[] STAGE_NAMES = {"receive", "queue", "code", "read", "message", "encode", "send"};
+	static final int RING_SIZE = 1024; //Number of traces kept. A power of 2, so that the slot is a mask of the counter.
+	static final long SLOW_REQUEST_NANOS = Long.getLong("ents.slowRequestMs", 100)*1000000L; //Requests taking longer are logged
+	static final long SLOW_LOG_INTERVAL_NANOS = 1000000000L; //Shortest time between two slow-request logs
+	static final boolean JFR_AVAILABLE = isJfrAvailable(); //false if the JDK has no jdk.jfr module
+
+	private static final AtomicReferenceArray<RequestTrace> ring = new AtomicReferenceArray<RequestTrace>(RING_SIZE); //The latest traces
+	private static final AtomicLong finishedCount = new AtomicLong(); //Number of finished traces. The next trace goes to slot finishedCount % RING_SIZE.
+	private static final AtomicLong nextSlowLogTime = new AtomicLong(System.nanoTime()); //Earliest time of the next slow-request log
+	private static final AtomicLong slowNotLogged = new AtomicLong(); //Slow requests not logged since the last log
+
+	private final long[] stamps = new long[STAGE_NAMES.length+1]; //stamps[0] is the arrival, stamps[stage+1] the end of the stage. 0 if not marked.
+	private String fileName = ""; //The requested file, or "batch ..." for a batch request
+	private int responseCode = -1; //The response code sent
+
+	public RequestTrace(long arrivalTime) {
+		stamps[0] = arrivalTime;
+	}
+
+	/*
+	 * mark(int stage)
+	 * Marks the end of a stage. Only the thread which owns the request calls it, so no synchronization is needed.
+	 */
+	public void mark(int stage) {
+		stamps[stage+1] = System.nanoTime();
+	}
+
+	/*
+	 * finish(String fileName, int responseCode)
+	 * Ends the trace after the response was sent: stores it in the ring buffer, logs it if it was slow
+	 * and commits it to Java Flight Recorder.
+	 *
+	 * fileName - The requested file
+	 * responseCode - The response code sent
+	 */
+	public void finish(String fileName, int responseCode) {
+		this.fileName = fileName;
+		this.responseCode = responseCode;
+		for(int i=1; i<stamps.length; i++) {
+			if(0 == stamps[i])
+				stamps[i] = stamps[i-1];//The request does not have this stage
+		}
+		//Lock-free: every finished trace gets its own slot, and set() publishes the trace to the readers
+		ring.set((int)(finishedCount.getAndIncrement() & (RING_SIZE-1)), this);
+		if(getTotal() >= SLOW_REQUEST_NANOS)
+			logSlowRequest();
+		if(JFR_AVAILABLE)
+			RequestTraceEvent.commit(this);
+	}//end of finish()
+
+	/*
+	 * logSlowRequest()
+	 * Logs the breakdown of a slow request, unless another slow request was logged less than a second ago.
+	 */
+	private void logSlowRequest() {
+		long now = System.nanoTime();
+		long next = nextSlowLogTime.get();
+		if(now - next < 0 || !nextSlowLogTime.compareAndSet(next, now + SLOW_LOG_INTERVAL_NANOS)) {
+			slowNotLogged.incrementAndGet();
+			return;
+		}
+		long notLogged = slowNotLogged.getAndSet(0);
+		System.out.printf("\nSlow request %s (response code %d): %s%s", fileName, responseCode, toString(),
+				(notLogged > 0) ? " (" + notLogged + " more slow requests since the last log)" : "");
+	}//end of logSlowRequest()
+
+	/*
+	 * @return: Time in ns the request spent in the stage
+	 */
+	public long getDuration(int stage) {
+		return stamps[stage+1] - stamps[stage];
+	}
+
+	/*
+	 * @return: Time in ns from receiving the request until the response was sent
+	 */
+	public long getTotal() {
+		return stamps[stamps.length-1] - stamps[0];
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	/*
+	 * @return: The breakdown, e.g. "12.40ms = receive 0.05ms, queue 0.01ms, code 0.20ms, ..."
+	 */
+	@Override
+	public String toString() {
+		StringBuilder breakdown = new StringBuilder(String.format("%.2fms =", getTotal()/1000000.0));
+		for(int stage=0; stage<STAGE_NAMES.length; stage++)
+			breakdown.append(String.format("%s %s %.2fms", (stage > 0) ? "," : "", STAGE_NAMES[stage], getDuration(stage)/1000000.0));
+		return breakdown.toString();
+	}
+
+	/*
+	 * List<RequestTrace> getRecentTraces()
+	 * Reads the ring buffer without stopping the server. A slot which is overwritten while it is read
+	 * gives the newer trace.
+	 *
+	 * @return: The finished traces still in the ring buffer, oldest first
+	 */
+	public static List<RequestTrace> getRecentTraces() {
+		long end = finishedCount.get();
+		List<RequestTrace> traces = new ArrayList<RequestTrace>();
+		for(long i=Math.max(0, end-RING_SIZE); i<end; i++) {
+			RequestTrace trace = ring.get((int)(i & (RING_SIZE-1)));
+			if(null != trace)
+				traces.add(trace);
+		}
+		return traces;
+	}//end of getRecentTraces()
+
+	private static boolean isJfrAvailable() {
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		}
+		catch(Throwable e) {
+			return false;
+		}
+	}
+
+}//end of class RequestTrace
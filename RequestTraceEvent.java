@@ -0,0 +1,54 @@
+package server;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/*
+ * class RequestTraceEvent
+ * Java Flight Recorder event with the stage breakdown of one request. It is only loaded by RequestTrace when
+ * the JDK has the jdk.jfr module. Record it with e.g. java -XX:StartFlightRecording=filename=server.jfr server.Server
+ */
+@Name("ents.Request")
+@Label("ENTS Request")
+@Category("ENTS")
+@Description("Time of one request in every stage of the server")
+@StackTrace(false)
+class RequestTraceEvent extends Event {
+	@Label("File") String fileName;
+	@Label("Response Code") int responseCode;
+	@Label("Total") @Timespan long total;
+	@Label("Receive") @Timespan long receive;
+	@Label("Queue") @Timespan long queue;
+	@Label("Response Code Check") @Timespan long code;
+	@Label("Read") @Timespan long read;
+	@Label("Message") @Timespan long message;
+	@Label("Encode") @Timespan long encode;
+	@Label("Send") @Timespan long send;
+
+	/*
+	 * commit(RequestTrace trace)
+	 * Commits the trace as an event. Does nothing if no recording has the event enabled.
+	 */
+	static void commit(RequestTrace trace) {
+		RequestTraceEvent event = new RequestTraceEvent();
+		if(!event.isEnabled())
+			return;
+		event.fileName = trace.getFileName();
+		event.responseCode = trace.getResponseCode();
+		event.total = trace.getTotal();
+		event.receive = trace.getDuration(RequestTrace.RECEIVE);
+		event.queue = trace.getDuration(RequestTrace.QUEUE);
+		event.code = trace.getDuration(RequestTrace.CODE);
+		event.read = trace.getDuration(RequestTrace.READ);
+		event.message = trace.getDuration(RequestTrace.MESSAGE);
+		event.encode = trace.getDuration(RequestTrace.ENCODE);
+		event.send = trace.getDuration(RequestTrace.SEND);
+		event.commit();
+	}//end of commit()
+
+}//end of class RequestTraceEvent
@@ -0,0 +1,118 @@
+package server;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * class RequestTraceTest
+ * Tests of the stage breakdown of a RequestTrace, of the ring buffer of the latest traces and of the slow-request log.
+ */
+public class RequestTraceTest {
+
+	PrintStream standardOut; //System.out of the JVM
+	ByteArrayOutputStream log; //What the traces print while a test runs
+
+	/*
+	 * Catch the output of the traces before every test method
+	 */
+	@Before
+	public void setUp() throws Exception {
+		standardOut = System.out;
+		log = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(log, true));
+	}
+
+	/*
+	 * Print to System.out again after every test method
+	 */
+	@After
+	public void tearDown() throws Exception {
+		System.setOut(standardOut);
+	}
+
+	/*
+	 * RequestTrace slowTrace(String fileName)
+	 * @return: A finished trace of a request which arrived twice the slow-request time ago
+	 */
+	RequestTrace slowTrace(String fileName) {
+		RequestTrace trace = new RequestTrace(System.nanoTime() - 2*RequestTrace.SLOW_REQUEST_NANOS);
+		trace.mark(RequestTrace.SEND);
+		trace.finish(fileName, 0);
+		return trace;
+	}
+
+	/*
+	 * int countSlowLogs()
+	 * @return: Number of slow-request lines printed since the test started
+	 */
+	int countSlowLogs() {
+		return log.toString().split("\nSlow request ", -1).length - 1;
+	}
+
+	/*
+	 * finishShouldFillUnmarkedStages()
+	 * This test checks that a stage which was not marked takes 0ns, so that the stages add up to the total.
+	 */
+	@Test
+	public void finishShouldFillUnmarkedStages() throws Exception {
+		RequestTrace trace = new RequestTrace(System.nanoTime());
+		trace.mark(RequestTrace.RECEIVE);
+		Thread.sleep(2);
+		trace.mark(RequestTrace.CODE);//No queue stage
+		trace.mark(RequestTrace.SEND);//No read, message and encode stages
+		trace.finish("file_A.txt", 0);
+		long sum = 0;
+		for(int stage=0; stage<RequestTrace.STAGE_NAMES.length; stage++) {
+			assertTrue(trace.getDuration(stage) >= 0);
+			sum = sum + trace.getDuration(stage);
+		}
+		assertEquals(trace.getTotal(), sum);
+		assertEquals(0, trace.getDuration(RequestTrace.QUEUE));
+		assertEquals(0, trace.getDuration(RequestTrace.READ));
+		assertEquals(0, trace.getDuration(RequestTrace.MESSAGE));
+		assertEquals(0, trace.getDuration(RequestTrace.ENCODE));
+		assertTrue(trace.getDuration(RequestTrace.CODE) >= 2000000L);//The 2ms of sleep
+	}//end of finishShouldFillUnmarkedStages()
+
+	/*
+	 * recentTracesShouldBeOldestFirstAfterRingWraps()
+	 * This test checks that the ring buffer keeps the latest RING_SIZE traces, oldest first, after it was filled more than once.
+	 */
+	@Test
+	public void recentTracesShouldBeOldestFirstAfterRingWraps() throws Exception {
+		int finished = RequestTrace.RING_SIZE + 100;
+		for(int i=0; i<finished; i++) {
+			RequestTrace trace = new RequestTrace(System.nanoTime());
+			trace.mark(RequestTrace.SEND);
+			trace.finish("ring " + i, 0);
+		}
+		List<RequestTrace> traces = RequestTrace.getRecentTraces();
+		assertEquals(RequestTrace.RING_SIZE, traces.size());
+		for(int i=0; i<traces.size(); i++)
+			assertEquals("ring " + (finished - RequestTrace.RING_SIZE + i), traces.get(i).getFileName());
+	}//end of recentTracesShouldBeOldestFirstAfterRingWraps()
+
+	/*
+	 * slowRequestsShouldBeLoggedOncePerInterval()
+	 * This test checks that only one slow request is logged per interval, and that the next log
+	 * reports how many slow requests were not logged.
+	 */
+	@Test
+	public void slowRequestsShouldBeLoggedOncePerInterval() throws Exception {
+		Thread.sleep(RequestTrace.SLOW_LOG_INTERVAL_NANOS/1000000);//The interval of a log by an earlier test has passed
+		slowTrace("file_A.txt");
+		assertEquals(1, countSlowLogs());
+		slowTrace("file_B.txt");
+		slowTrace("file_C.txt");
+		assertEquals(1, countSlowLogs());//Within the interval
+		Thread.sleep(RequestTrace.SLOW_LOG_INTERVAL_NANOS/1000000 + 10);
+		slowTrace("file_A.txt");
+		assertEquals(2, countSlowLogs());
+		assertTrue(log.toString().endsWith(" (2 more slow requests since the last log)"));
+	}//end of slowRequestsShouldBeLoggedOncePerInterval()
+
+}//end of test class RequestTraceTest
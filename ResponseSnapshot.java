@@ -0,0 +1,313 @@
+package server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/*
+ * class ResponseSnapshot
+ * This class keeps the encoded ENTS/1.0 response of every file of the catalog, with its validator, in a snapshot
+ * file. At startup the snapshot file is memory-mapped, so the server can send the responses without reading the
+ * files or calculating integrity values. A background thread compares the validators with the files and encodes
+ * the changed files again.
+ *
+ * Snapshot file format (big-endian):
+ *   "ENTSSNAP", int version, int number of entries, then for every entry:
+ *   short length + file name, short length + validator, int length + encoded response, long CRC32C of the encoded response
+ * Strings are UTF-8. The CRC32C is checked when the snapshot is loaded, so a damaged response is never sent: the
+ * client would get the same wrong bytes every time it asks again.
+ *
+ * Every save writes a new generation of the snapshot file, <snapshot file>.<generation>, and load() maps the newest one.
+ * A mapped file cannot be replaced on Windows, and the mapping of the loaded snapshot lasts until it is garbage collected.
+ * Older generations are deleted after a save; one which is still mapped is deleted after a later save.
+ * The snapshot file without a generation is generation 0.
+ */
+public class ResponseSnapshot {
+	static final byte[] MAGIC = "ENTSSNAP".getBytes(StandardCharsets.US_ASCII); //First bytes of a snapshot file
+	static final int VERSION = 2; //Version of the snapshot file format. Version 1 files are encoded again.
+
+	private final File snapshotFile; //Where the snapshot is stored
+	private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>(); //Encoded responses, by file name
+	private volatile Thread refresher = null; //The thread started by startRefresher(). null if it is not running.
+
+	/*
+	 * class Entry
+	 * The encoded response of one file. The response is a slice of the mapped snapshot file,
+	 * or a heap buffer for files encoded after startup.
+	 */
+	static class Entry {
+		final String validator; //Validator of the file when the response was encoded
+		final ByteBuffer response; //The encoded response
+
+		Entry(String validator, ByteBuffer response) {
+			this.validator = validator;
+			this.response = response;
+		}
+	}//end of class Entry
+
+	private ResponseSnapshot(File snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	/*
+	 * ResponseSnapshot load(File snapshotFile)
+	 * Memory-maps the newest generation of the snapshot file and reads its index. The responses stay in the mapped file until they are sent,
+	 * they are only read once to check their CRC32C. A missing or damaged snapshot file gives an empty snapshot.
+	 *
+	 * snapshotFile - The snapshot file
+	 * @return: The loaded snapshot
+	 */
+	public static ResponseSnapshot load(File snapshotFile) {
+		ResponseSnapshot snapshot = new ResponseSnapshot(snapshotFile);
+		File newestFile = getNewestFile(snapshotFile);
+		if(null == newestFile)
+			return snapshot;
+		try {
+			FileChannel snapshotChannel = FileChannel.open(newestFile.toPath(), StandardOpenOption.READ);
+			MappedByteBuffer mapped;
+			try {
+				mapped = snapshotChannel.map(FileChannel.MapMode.READ_ONLY, 0, snapshotChannel.size());//The mapping stays valid after the channel is closed
+			}
+			finally {
+				snapshotChannel.close();
+			}
+			byte[] magic = new byte[MAGIC.length];
+			mapped.get(magic);
+			if(!ByteBuffer.wrap(magic).equals(ByteBuffer.wrap(MAGIC)) || mapped.getInt() != VERSION) {
+				System.out.print("\nThe snapshot file has an unknown format. It is ignored.");
+				return snapshot;
+			}
+			int entryCount = mapped.getInt();
+			for(int i=0; i<entryCount; i++) {
+				String fileName = readString(mapped);
+				String validator = readString(mapped);
+				int responseLength = mapped.getInt();
+				ByteBuffer response = mapped.slice();
+				response.limit(responseLength);
+				mapped.position(mapped.position()+responseLength);
+				if(mapped.getLong() != getChecksum(response)) {
+					System.out.print("\nThe snapshot file is damaged. It is ignored.");
+					snapshot.entries.clear();
+					return snapshot;
+				}
+				snapshot.entries.put(fileName, new Entry(validator, response));
+			}
+		}
+		catch(Exception e) {
+			//A damaged snapshot is not an error. The responses are encoded again by refresh().
+			System.out.print("\nThe snapshot file could not be read. It is ignored. " + e.getMessage());
+			snapshot.entries.clear();
+		}
+		return snapshot;
+	}//end of load()
+
+	/*
+	 * byte[] getResponse(String fileName, String validator)
+	 * Gets the encoded response of a file, if it was encoded from the current version of the file.
+	 *
+	 * fileName - The name of the requested file
+	 * validator - The current validator of the file
+	 * @return: The encoded response, null if the file is not in the snapshot or has changed
+	 */
+	public byte[] getResponse(String fileName, String validator) {
+		Entry entry = entries.get(fileName);
+		if(null == entry || !entry.validator.equals(validator))
+			return null;
+		byte[] response = new byte[entry.response.remaining()];
+		entry.response.duplicate().get(response);//duplicate() so that threads do not share the position of the buffer
+		return response;
+	}//end of getResponse()
+
+	/*
+	 * refresh(String[] catalog, ClientServerUtility utility)
+	 * Encodes the response of every file of the catalog whose validator differs from the snapshot, removes
+	 * files which no longer exist, and saves the snapshot file if anything changed.
+	 *
+	 * catalog - The names of the files which can be requested
+	 */
+	public void refresh(String[] catalog, ClientServerUtility utility) throws Exception {
+		boolean changed = false;
+		for(String fileName : catalog) {
+			if(!new File(Server.FILE_PATH+fileName).isFile()) {
+				changed |= (null != entries.remove(fileName));
+				continue;
+			}
+			String validator = Server.getValidator(fileName);
+			Entry entry = entries.get(fileName);
+			if(null != entry && entry.validator.equals(validator))
+				continue;//Still up to date
+			String response = Server.generateResponseMessage(0, Server.fileRead(fileName, utility), utility);
+			entries.put(fileName, new Entry(validator, ByteBuffer.wrap(response.getBytes())));
+			changed = true;
+		}
+		if(changed)
+			save();
+	}//end of refresh()
+
+	/*
+	 * startRefresher(String[] catalog, ClientServerUtility utility, long interval)
+	 * Starts the background thread which refreshes the snapshot, the first time immediately.
+	 *
+	 * catalog - The names of the files which can be requested
+	 * interval - Time in ms between two refreshes
+	 */
+	public void startRefresher(String[] catalog, ClientServerUtility utility, long interval) {
+		refresher = new Thread(() -> {
+			while(true) {
+				try {
+					refresh(catalog, utility);
+					Thread.sleep(interval);
+				}
+				catch(InterruptedException e) {
+					return;
+				}
+				catch(Exception e) {
+					System.out.print("\nThe snapshot could not be refreshed. " + e.getMessage());
+				}
+			}
+		}, "snapshot-refresher");
+		refresher.setDaemon(true);
+		refresher.start();
+	}//end of startRefresher()
+
+	/*
+	 * stopRefresher()
+	 * Stops the thread started by startRefresher() and waits until it has stopped, so that it does not save
+	 * the snapshot afterwards. A refresh in progress is finished first.
+	 */
+	public void stopRefresher() throws InterruptedException {
+		Thread thread = refresher;
+		if(null == thread)
+			return;
+		thread.interrupt();//Thread.sleep() between the refreshes throws InterruptedException
+		thread.join();
+		refresher = null;
+	}//end of stopRefresher()
+
+	/*
+	 * save()
+	 * Writes all the entries to a temporary file and then renames it to the next generation of the snapshot file, so that
+	 * a server starting at the same time never maps a half written snapshot. No file is replaced, as the older generation
+	 * may still be mapped. The older generations are deleted afterwards if they are no longer mapped.
+	 */
+	public synchronized void save() throws Exception {
+		File newestFile = getNewestFile(snapshotFile);
+		File nextFile = getGenerationFile(snapshotFile, (null == newestFile) ? 1 : getGeneration(snapshotFile, newestFile.getName())+1);
+		File temporaryFile = new File(nextFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+		try {
+			Map<String, Entry> copy = new ConcurrentHashMap<String, Entry>(entries);//Entries may change while they are written
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(copy.size());
+			for(Map.Entry<String, Entry> entry : copy.entrySet()) {
+				writeString(out, entry.getKey());
+				writeString(out, entry.getValue().validator);
+				ByteBuffer response = entry.getValue().response.duplicate();
+				out.writeInt(response.remaining());
+				long checksum = getChecksum(response);
+				while(response.hasRemaining())
+					out.write(response.get());
+				out.writeLong(checksum);
+			}
+		}
+		finally {
+			out.close();
+		}
+		Files.move(temporaryFile.toPath(), nextFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		for(File olderFile : getGenerationFiles(snapshotFile)) {
+			if(!olderFile.getName().equals(nextFile.getName()))
+				olderFile.delete();//Fails while the file is mapped on Windows. Deleted after a later save then.
+		}
+	}//end of save()
+
+	/*
+	 * File getNewestFile(File snapshotFile)
+	 * @return: The generation of the snapshot file with the highest number, null if there is none
+	 */
+	static File getNewestFile(File snapshotFile) {
+		File newestFile = null;
+		for(File generationFile : getGenerationFiles(snapshotFile)) {
+			if(null == newestFile || getGeneration(snapshotFile, generationFile.getName()) > getGeneration(snapshotFile, newestFile.getName()))
+				newestFile = generationFile;
+		}
+		return newestFile;
+	}//end of getNewestFile()
+
+	/*
+	 * List<File> getGenerationFiles(File snapshotFile)
+	 * @return: All the generations of the snapshot file in its folder, in no particular order
+	 */
+	static List<File> getGenerationFiles(File snapshotFile) {
+		List<File> generationFiles = new ArrayList<File>();
+		File folder = snapshotFile.getAbsoluteFile().getParentFile();
+		String[] names = folder.list();
+		if(null == names)
+			return generationFiles;//The folder does not exist
+		for(String name : names) {
+			if(getGeneration(snapshotFile, name) >= 0 && new File(folder, name).isFile())
+				generationFiles.add(new File(folder, name));
+		}
+		return generationFiles;
+	}//end of getGenerationFiles()
+
+	/*
+	 * long getGeneration(File snapshotFile, String name)
+	 * @return: The generation of the file with the given name, 0 for the snapshot file itself, -1 if it is no generation of it
+	 */
+	static long getGeneration(File snapshotFile, String name) {
+		if(name.equals(snapshotFile.getName()))
+			return 0;
+		String suffix = name.startsWith(snapshotFile.getName() + ".") ? name.substring(snapshotFile.getName().length()+1) : "";
+		return suffix.matches("^[0-9]{1,18}$") ? Long.parseLong(suffix) : -1;//Temporary files end with ".tmp"
+	}//end of getGeneration()
+
+	/*
+	 * @return: The file of the given generation of the snapshot file
+	 */
+	static File getGenerationFile(File snapshotFile, long generation) {
+		return (0 == generation) ? snapshotFile : new File(snapshotFile.getPath() + "." + generation);
+	}
+
+	/*
+	 * @return: Number of files in the snapshot
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/*
+	 * @return: CRC32C of the remaining bytes of the buffer. The position of the buffer is not changed.
+	 */
+	static long getChecksum(ByteBuffer buffer) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.duplicate());
+		return crc.getValue();
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xffff];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws Exception {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+}//end of class ResponseSnapshot
@@ -0,0 +1,105 @@
+package server;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * class ResponseSnapshotTest
+ * Tests of saving the snapshot file and loading it again.
+ */
+public class ResponseSnapshotTest {
+
+	static final String FILE_NAME = "snapshot_test.txt"; //File of the catalog of the tests
+	ClientServerUtility utility;
+	File file; //The file, in the folder of the server
+	File snapshotFile; //Where the snapshot is saved. Its generations are saved next to it.
+
+	/*
+	 * Create the file and an empty snapshot file name before every test method
+	 */
+	@Before
+	public void setUp() throws Exception {
+		utility = new ClientServerUtility();
+		file = new File(Server.FILE_PATH + FILE_NAME);
+		Files.write(file.toPath(), "The contents of the file.\nIt has two lines.".getBytes());
+		snapshotFile = new File("test_responses.snapshot");//A relative path, like Server.SNAPSHOT_FILE
+	}
+
+	/*
+	 * Remove the files after every test method
+	 */
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+		for(File generationFile : ResponseSnapshot.getGenerationFiles(snapshotFile))
+			generationFile.delete();
+	}
+
+	/*
+	 * savedSnapshotShouldLoadSameResponse()
+	 * This test checks that a snapshot loaded from the saved file gives the same encoded response,
+	 * and no response for another validator.
+	 */
+	@Test
+	public void savedSnapshotShouldLoadSameResponse() throws Exception {
+		ResponseSnapshot snapshot = ResponseSnapshot.load(snapshotFile);
+		snapshot.refresh(new String[] {FILE_NAME}, utility);//Encodes the file and saves the snapshot
+		byte[] response = snapshot.getResponse(FILE_NAME, Server.getValidator(FILE_NAME));
+		assertNotNull(response);
+		assertNotNull(ResponseSnapshot.getNewestFile(snapshotFile));
+		
+		ResponseSnapshot loadedSnapshot = ResponseSnapshot.load(snapshotFile);
+		assertEquals(1, loadedSnapshot.size());
+		assertArrayEquals(response, loadedSnapshot.getResponse(FILE_NAME, Server.getValidator(FILE_NAME)));
+		assertNull(loadedSnapshot.getResponse(FILE_NAME, "0"));//Changed file
+		assertTrue(utility.isIntegrityValueOfMessageCorrect(new String(response), "response"));
+	}//end of savedSnapshotShouldLoadSameResponse()
+
+	/*
+	 * saveShouldWriteNewGeneration()
+	 * This test checks that a loaded snapshot saves a changed file to a new generation instead of replacing the
+	 * file it has mapped, and that the next load gets the response of the changed file.
+	 */
+	@Test
+	public void saveShouldWriteNewGeneration() throws Exception {
+		ResponseSnapshot.load(snapshotFile).refresh(new String[] {FILE_NAME}, utility);
+		File firstFile = ResponseSnapshot.getNewestFile(snapshotFile);
+		ResponseSnapshot loadedSnapshot = ResponseSnapshot.load(snapshotFile);//Maps the first generation
+		Files.write(file.toPath(), "The changed contents of the file.".getBytes());
+		loadedSnapshot.refresh(new String[] {FILE_NAME}, utility);
+		File secondFile = ResponseSnapshot.getNewestFile(snapshotFile);
+		assertNotEquals(firstFile, secondFile);
+		byte[] response = ResponseSnapshot.load(snapshotFile).getResponse(FILE_NAME, Server.getValidator(FILE_NAME));
+		assertNotNull(response);
+		assertArrayEquals(loadedSnapshot.getResponse(FILE_NAME, Server.getValidator(FILE_NAME)), response);
+	}//end of saveShouldWriteNewGeneration()
+
+	/*
+	 * damagedSnapshotShouldLoadEmpty()
+	 * This test checks that a snapshot file with a changed byte in a response, or cut short, gives an empty snapshot.
+	 */
+	@Test
+	public void damagedSnapshotShouldLoadEmpty() throws Exception {
+		ResponseSnapshot.load(snapshotFile).refresh(new String[] {FILE_NAME}, utility);
+		RandomAccessFile damagedFile = new RandomAccessFile(ResponseSnapshot.getNewestFile(snapshotFile), "rw");
+		try {
+			long position = damagedFile.length() - 8 - 10;//A byte of the response, before its CRC32C
+			damagedFile.seek(position);
+			int value = damagedFile.read();
+			damagedFile.seek(position);
+			damagedFile.write(value ^ 1);
+			assertEquals(0, ResponseSnapshot.load(snapshotFile).size());
+			
+			damagedFile.setLength(damagedFile.length() - 20);//Cut short
+			assertEquals(0, ResponseSnapshot.load(snapshotFile).size());
+		}
+		finally {
+			damagedFile.close();
+		}
+	}//end of damagedSnapshotShouldLoadEmpty()
+
+}//end of test class ResponseSnapshotTest
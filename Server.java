@@ -1,10 +1,17 @@
 package server;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.util.concurrent.Callable;
 
 /*
  * class Server
@@ -17,86 +24,220 @@ import java.net.UnknownHostException;
  * 4. Wrong protocol version 
  */
 public class Server {
+	public static final String FILE_PATH = "file path"; //Path of the folder which has the files, including the final separator
+	static final String[] CATALOG = {"file_A.txt", "file_B.txt", "file_C.txt"}; //The files which can be requested
+	public static final File SNAPSHOT_FILE = new File("responses.snapshot"); //Encoded responses of the catalog, kept across restarts. Saved as responses.snapshot.<generation>.
+	static final long SNAPSHOT_REFRESH_INTERVAL = 5000; //Time in ms between two checks of the snapshot against the files
+	static ResponseSnapshot snapshot = null; //Encoded responses of the catalog. null until the server is started.
+	static final int SCHEDULER_CAPACITY = 64; //Largest number of requests waiting to be handled
+	public static Callable<DatagramSocket> socketFactory = null; //Opens the server socket instead of new DatagramSocket(1027), e.g. a simulated network in tests. null for a UDP socket.
+	static volatile Thread serverThread = null; //Thread running main(). null when the server is not running.
 
 	public static void main(String[] args) {
     
 		ClientServerUtility utility = new ClientServerUtility();
     int serverPortNumber = 1027;//assign port number for the server to send response through
-    String responseToBeSent = "";
-    byte[] responseToBeSentInBytes; //Response message in byte form
-    InetAddress ipAddressOfClient = null;
-	  try {
-		  ipAddressOfClient = InetAddress.getLocalHost(); //Get the IP address of the host
-	  } 
-	  catch (UnknownHostException e1) {
-		  e1.printStackTrace(); //Could not get host information
-	  }
+    DatagramSocket serverSocket = null;
+    serverThread = Thread.currentThread();//Interrupted by stop()
 	 
     System.out.println("The server is waiting for client to send the request:");
     try
     {
-    	DatagramSocket serverSocket= new DatagramSocket(serverPortNumber);
-    	byte[] receivedRequest=new byte[100000];//byte array to store the received request
+    	snapshot = ResponseSnapshot.load(SNAPSHOT_FILE);//Responses of the last run can be sent immediately
+    	snapshot.startRefresher(CATALOG, utility, SNAPSHOT_REFRESH_INTERVAL);//Encode the files which changed in the background
+    	serverSocket= (null == socketFactory) ? new DatagramSocket(serverPortNumber) : socketFactory.call();
+    	utility.configureSocket(serverSocket);//Socket buffers sized for datagrams of the payload size
+    	RequestScheduler scheduler = new RequestScheduler(SCHEDULER_CAPACITY);//Requests wait here between receiving and handling
+    	DatagramSocket receiverSocket = serverSocket;
+    	Thread receiver = new Thread(() -> receiveRequests(receiverSocket, scheduler, utility), "receiver");
+    	receiver.setDaemon(true);
+    	receiver.start();
     	 
     	while(true) {
-    		DatagramPacket receivedData=new DatagramPacket(receivedRequest,receivedRequest.length);
-    		String receivedDataString = receiveRequest(receivedRequest, serverSocket, receivedData);//Convert the received bytes to string
-    		System.out.printf("\n\nReceived request : \n%s", receivedDataString);
-    		String[] splitRequest =receivedDataString.split("\r\n");//split the received request using CRLF as delimiter
-    		int responseCode = generateResponseCode(receivedDataString, utility, splitRequest);//Get response code based on the received request	
-        String fileContent = "";
-      		
-      		switch(responseCode) {
-      		  //Case 0: response is OK
-      		  case 0: fileContent=fileRead(splitRequest[1], utility);//Read the content of the requested file.
-      			   			responseToBeSent = generateResponseMessage(responseCode, fileContent, utility);
-    			          break;
-      		  //Case 1: Integrity check failure      
-      		  case 1: responseToBeSent = generateResponseMessage(responseCode, fileContent, utility);      
-      		          break;
-		        //Case 2: Malformed request  
-      		  case 2: responseToBeSent = generateResponseMessage(responseCode, fileContent, utility);      
-                    break;
-            //Case 3: Non-existent file        	
-      		  case 3: responseToBeSent = generateResponseMessage(responseCode, fileContent, utility);      
-                    break;
-            //Case 4: Wrong protocol version        
-      		  case 4: responseToBeSent = generateResponseMessage(responseCode, fileContent, utility);      
-                    break;           
-            //Any other response code      
-            default: System.out.print("\nWrong response code generated!");
-          	  			 System.exit(0);
-      		}//end of switch() 
-      		
-      		System.out.printf("\n\nSent response : \n"+responseToBeSent);
-          responseToBeSentInBytes = utility.messageInBytes(responseToBeSent);//convert response message to bytes
-          ipAddressOfClient = receivedData.getAddress();//get the IP address of the client from the received request
-          //Datagram object for response which has to be sent to client. Retrieve the port number from the received client 
-      		DatagramPacket response = new DatagramPacket(responseToBeSentInBytes,responseToBeSentInBytes.length,ipAddressOfClient,receivedData.getPort());
-		      serverSocket.send(response);//send the response to the client IP using the server socket
+    		//Handle the most urgent request. Requests whose client has stopped waiting are dropped by the scheduler.
+    		RequestScheduler.ScheduledRequest request = scheduler.take();
+    		handleRequest(request.receivedDataString, request.receivedData, serverSocket, utility, request.trace);
     	}//end of while()
     	
     }//end of try{} 
+ 	 catch (InterruptedException e)
+ 	 {
+ 		 //Stopped by stop()
+ 		 System.out.println("\nThe server was stopped.");
+ 	 }
  	 catch (Exception e)
  	 {
  		 //Did not receive request from client
  		 e.printStackTrace();
  		 System.out.println("There is an error in the server :");
  	 }
+    finally
+    {
+    	if(null != serverSocket)
+    		serverSocket.close();//Ends the receiver
+    	try {
+    		if(null != snapshot)
+    			snapshot.stopRefresher();//No snapshot file is written after the server has stopped
+    	}
+    	catch(InterruptedException e) {
+    		//Interrupted again while waiting for the refresher
+    	}
+    	serverThread = null;
+    }
     
 	}//end of main()
 	
 	/*
-	 * String receiveRequest(byte[] messageBuffer, DatagramSocket serverSocket, DatagramPacket receivedData)
-	 * This class receives the request sent by the client using the server socket.
+	 * stop()
+	 * This class stops the server started with main(): the loop handling the requests, the receiver and the snapshot
+	 * refresher. It returns when they have stopped. Used by tests which run the server in their JVM.
+	 */
+	public static void stop() throws InterruptedException {
+		Thread thread = serverThread;
+		if(null == thread)
+			return;//Not running
+		thread.interrupt();//take() of the scheduler throws InterruptedException
+		thread.join();
+	}//end of stop()
+	
+	/*
+	 * receiveRequests(DatagramSocket serverSocket, RequestScheduler scheduler, ClientServerUtility utility)
+	 * This class receives the requests in its own thread and passes them to the scheduler. The optional "Timeout"
+	 * header field (time in ms the client waits for the response) gives the deadline of the request, and the optional
+	 * "Priority" header field (high, normal or low) its priority class. A request with "Timeout: 0" is dropped,
+	 * as its client does not wait for the response.
 	 * 
-	 * receivedRequest - byte array buffer to store the received bytes and convert it to String
 	 * serverSocket  - The socket information of the server
-	 * receivedData - DatagramPacket object to receive the request
+	 * scheduler - The queue of requests waiting to be handled
+	 */
+	public static void receiveRequests(DatagramSocket serverSocket, RequestScheduler scheduler, ClientServerUtility utility) {
+		byte[] receivedRequest=new byte[ClientServerUtility.MAX_UDP_PAYLOAD];//byte array to store the received request. Any datagram fits, so a request is never cut short.
+		while(true) {
+			try {
+				//A new packet for every request. Only its address and port are used after the request was converted to String.
+				DatagramPacket receivedData=new DatagramPacket(receivedRequest,receivedRequest.length);
+				serverSocket.receive(receivedData);//receive the request bytes via the server socket
+				long arrivalTime = System.nanoTime();//Stamped before the request is printed, so that printing it counts in the receive stage
+				String receivedDataString = requestToString(receivedRequest, receivedData);//Convert the received bytes to string
+				System.out.printf("\n\nReceived request : \n%s", receivedDataString);
+				String[] splitRequest = receivedDataString.split("\r\n");
+				String timeout = utility.getHeaderValue(splitRequest, 2, "Timeout");
+				String priority = utility.getHeaderValue(splitRequest, 2, "Priority");
+				if(null != timeout && timeout.matches("^0+$")) {
+					System.out.print("\nRequest with Timeout 0 dropped. Its client is not waiting for the response.");
+					continue;
+				}
+				long deadline = (null != timeout && timeout.matches("^[1-9][0-9]{0,8}$")) ? arrivalTime + Long.parseLong(timeout)*1000000L : Long.MAX_VALUE;//No deadline for ENTS/1.0 peers
+				RequestTrace trace = new RequestTrace(arrivalTime);
+				trace.mark(RequestTrace.RECEIVE);
+				if(!scheduler.offer(new RequestScheduler.ScheduledRequest(receivedDataString, receivedData, arrivalTime, deadline, RequestScheduler.getPriorityClass(priority), trace)))
+					System.out.print("\nThe request queue is full. Request dropped.");
+			}
+			catch(Exception e) {
+				if(serverSocket.isClosed())
+					return;
+				e.printStackTrace();
+			}
+		}
+	}//end of receiveRequests()
+	
+	/*
+	 * handleRequest(String receivedDataString, DatagramPacket receivedData, DatagramSocket serverSocket, ClientServerUtility utility, RequestTrace trace)
+	 * This class generates the response to one request and sends it to the client.
+	 * 
+	 * receivedDataString - Received request
+	 * receivedData - DatagramPacket object of the received request. Used to get the IP and port of the client.
+	 * serverSocket  - The socket information of the server
+	 * trace - Records the end of every stage of the request
+	 */
+	public static void handleRequest(String receivedDataString, DatagramPacket receivedData, DatagramSocket serverSocket, ClientServerUtility utility, RequestTrace trace) throws Exception {
+		trace.mark(RequestTrace.QUEUE);
+		String responseToBeSent = "";
+		byte[] responseToBeSentInBytes; //Response message in byte form
+		InetAddress ipAddressOfClient = null;
+		String[] splitRequest =receivedDataString.split("\r\n");//split the received request using CRLF as delimiter
+		if(splitRequest[0].endsWith("BatchRequest")) {
+			//A batch request is answered with one sequenced datagram per requested file
+			handleBatchRequest(receivedDataString, splitRequest, utility, serverSocket, receivedData, trace);
+			return;
+		}
+		int responseCode = generateResponseCode(receivedDataString, utility, splitRequest);//Get response code based on the received request	
+		trace.mark(RequestTrace.CODE);
+    String fileContent = "";
+    String integrityAlgorithm = utility.getHeaderValue(splitRequest, 2, "Integrity");//Integrity algorithm chosen by the client. null for ENTS/1.0 peers.
+    //The response is protected with the same integrity algorithm as the request
+    String integrityHeader = (integrityAlgorithm != null && utility.isIntegrityAlgorithmSupported(integrityAlgorithm)) ? "Integrity: "+integrityAlgorithm+"\r\n" : "";
+  		
+  		switch(responseCode) {
+  		  //Case 0: response is OK
+  		  case 0: String ifNoneMatch = utility.getHeaderValue(splitRequest, 2, "If-None-Match");//Validator of the copy cached by the client
+  		          if(ifNoneMatch != null) {
+  		          	responseToBeSent = generateConditionalResponseMessage(splitRequest[1], ifNoneMatch, integrityHeader, utility);//File is read only if it changed
+  		          	trace.mark(RequestTrace.READ);
+  		          	break;
+  		          }
+  		          String range = utility.getHeaderValue(splitRequest, 2, "Range");//Optional byte range of the file
+  		          if(range != null) {
+  		          	//The range is sent as raw bytes. A range can end inside a multi-byte character, so it is never converted to String.
+  		          	byte[] rangeResponse = generateRangeResponseMessage(splitRequest[1], range, integrityHeader, receivedData.getAddress(), utility);//Read only the requested part of the file
+  		          	trace.mark(RequestTrace.READ);
+  		          	System.out.printf("\n\nSent range response : \n%s", new String(rangeResponse));
+  		          	serverSocket.send(new DatagramPacket(rangeResponse, rangeResponse.length, receivedData.getAddress(), receivedData.getPort()));
+  		          	trace.mark(RequestTrace.SEND);
+  		          	trace.finish(splitRequest[1], responseCode);
+  		          	return;
+  		          }
+  		          byte[] encodedResponse = (null == snapshot || !integrityHeader.isEmpty()) ? null : snapshot.getResponse(splitRequest[1], getValidator(splitRequest[1]));
+  		          trace.mark(RequestTrace.READ);
+  		          if(null != encodedResponse) {
+  		          	//The snapshot has the response of the current version of the file. Send it as it is.
+  		          	System.out.print("\n\nSent response from the snapshot");
+  		          	serverSocket.send(new DatagramPacket(encodedResponse, encodedResponse.length, receivedData.getAddress(), receivedData.getPort()));
+  		          	trace.mark(RequestTrace.SEND);
+  		          	trace.finish(splitRequest[1], responseCode);
+  		          	return;
+  		          }
+  		          fileContent=fileRead(splitRequest[1], utility);//Read the content of the requested file.
+  		          trace.mark(RequestTrace.READ);
+  			   			responseToBeSent = generateResponseMessage(responseCode, integrityHeader, fileContent, utility);
+			          break;
+  		  //Case 1: Integrity check failure      
+  		  case 1: responseToBeSent = generateResponseMessage(responseCode, integrityHeader, fileContent, utility);      
+  		          break;
+		        //Case 2: Malformed request  
+  		  case 2: responseToBeSent = generateResponseMessage(responseCode, integrityHeader, fileContent, utility);      
+                break;
+        //Case 3: Non-existent file        	
+  		  case 3: responseToBeSent = generateResponseMessage(responseCode, integrityHeader, fileContent, utility);      
+                break;
+        //Case 4: Wrong protocol version        
+  		  case 4: responseToBeSent = generateResponseMessage(responseCode, integrityHeader, fileContent, utility);      
+                break;           
+        //Any other response code      
+        default: System.out.print("\nWrong response code generated!");
+      	  			 System.exit(0);
+  		}//end of switch() 
+  		trace.mark(RequestTrace.MESSAGE);
+  		
+  		System.out.printf("\n\nSent response : \n%s", responseToBeSent);
+      responseToBeSentInBytes = utility.messageInBytes(responseToBeSent);//convert response message to bytes
+      trace.mark(RequestTrace.ENCODE);
+      ipAddressOfClient = receivedData.getAddress();//get the IP address of the client from the received request
+      //Datagram object for response which has to be sent to client. Retrieve the port number from the received client 
+  		DatagramPacket response = new DatagramPacket(responseToBeSentInBytes,responseToBeSentInBytes.length,ipAddressOfClient,receivedData.getPort());
+		      serverSocket.send(response);//send the response to the client IP using the server socket
+		      trace.mark(RequestTrace.SEND);
+		      trace.finish(splitRequest[1], responseCode);
+	}//end of handleRequest()	
+	/*
+	 * String requestToString(byte[] receivedRequest, DatagramPacket receivedData)
+	 * This class prints the bytes of the request received from the client and converts them to String.
+	 * 
+	 * receivedRequest - byte array buffer which has the received bytes
+	 * receivedData - DatagramPacket object which received the request
 	 * @return: The received request in String format 
 	 */
-	public static String receiveRequest(byte[] receivedRequest, DatagramSocket serverSocket, DatagramPacket receivedData) throws Exception {
-		serverSocket.receive(receivedData);//receive the request bytes via the server socket
+	public static String requestToString(byte[] receivedRequest, DatagramPacket receivedData) {
 		System.out.print("Received request bytes from client : ");
 		for (int i=0;i<receivedData.getLength();i++)
 		  System.out.printf("%d,",receivedRequest[i]);
@@ -117,7 +258,9 @@ public class Server {
   	String[] firstline=splitRequest[0].split("/");//split the first line to get version number
   	String filename = splitRequest[1];//The 2nd line of the request is the file name
   	int responseCode = 0;
-  	if(!requestIntegrityMatches)
+  	if(!requestIntegrityMatches && !utility.isIntegrityAlgorithmSupported(utility.getHeaderValue(splitRequest, 2, "Integrity")))
+  		responseCode = 2;//Malformed request. The integrity algorithm is not known.
+  	else if(!requestIntegrityMatches)
   		responseCode = 1;//Integrity check failure
   	else
     {
@@ -126,7 +269,9 @@ public class Server {
   			 responseCode = 4;//Wrong protocol version	 
   		 else if(((splitRequest[0]==null || splitRequest[1]==null || splitRequest[2]==null) || (!(firstline[0].equals("ENTS")) || (firstline[1].compareTo("1.0 Request") == 1))) || (!utility.isFileNameSyntaxCorrect(filename, "response")))
   			 responseCode = 2;//Malformed request
-  		 else if((!(filename.equals("file_A.txt")) && !(filename.equals("file_B.txt")) && !(filename.equals("file_C.txt"))) || (fileRead(filename, utility).equals("File not Present")))
+  		 else if(utility.getHeaderValue(splitRequest, 2, "Range") != null && !utility.getHeaderValue(splitRequest, 2, "Range").matches("^[0-9]{1,18}-[0-9]{1,9}$"))
+  			 responseCode = 2;//Malformed request. Range must be <offset>-<length>
+  		 else if(!isInCatalog(filename) || (!new File(FILE_PATH+filename).isFile()))
   			 responseCode = 3;//Non-existent file
   	}	
 		return responseCode;
@@ -141,16 +286,275 @@ public class Server {
    * @return: Return the response which has to be sent to the client
 	 */
 	public static String generateResponseMessage(int responseCode, String fileContent, ClientServerUtility utility) {
+		return generateResponseMessage(responseCode, "", fileContent, utility);
+	}
+	
+	/*
+	 * String generateResponseMessage(int responseCode, String headers, String fileContent, ClientServerUtility utility)
+	 * This class generates the response with optional header fields placed between the response code and the content length.
+	 * 
+	 * headers - "Name: value" lines, each ending with CR+LF. Empty when no header field is sent.
+	 *           If the "Integrity" header field is present, its algorithm is used for the integrity check value.
+	 */
+	public static String generateResponseMessage(int responseCode, String headers, String fileContent, ClientServerUtility utility) {
 		String firstLineToSend="ENTS/1.0 Response\r\n";//first line of the response message
 		String responseToBeSent = "";
 		if(responseCode == 0)
-		  responseToBeSent = firstLineToSend+responseCode+"\r\n"+fileContent.length()+"\r\n"+fileContent;//Include file content only if response code is 0
+		  responseToBeSent = firstLineToSend+responseCode+"\r\n"+headers+fileContent.length()+"\r\n"+fileContent;//Include file content only if response code is 0
 		else
-			responseToBeSent=firstLineToSend+responseCode+"\r\n"+"0"+"\r\n";//send response with appropriate response code
-		String integrityValueToSend = utility.getIntegrityCheckValue(responseToBeSent);//Calculate the integrity check value which has to be included in the response
+			responseToBeSent=firstLineToSend+responseCode+"\r\n"+headers+"0"+"\r\n";//send response with appropriate response code
+		String integrityAlgorithm = utility.getHeaderValue(headers.split("\r\n"), 0, "Integrity");//null for the 16 bit checksum
+		String integrityValueToSend = utility.getIntegrityCheckValue(responseToBeSent, integrityAlgorithm);//Calculate the integrity check value which has to be included in the response
     return (responseToBeSent = responseToBeSent+integrityValueToSend+"\r\n");//append the integrity value to the response string
 	}
 	
+	/*
+	 * byte[] generateRangeResponseMessage(String fileName, String range, String integrityHeader, InetAddress client, ClientServerUtility utility)
+	 * This class generates the response for a byte range of the file. Only the requested bytes are read,
+	 * using a positioned read on the file channel. The "Range" header field of the response carries
+	 * <offset>-<number of bytes sent>/<size of the file>, so that the client knows where to continue.
+	 * The "Validator" header field lets the client notice that the file changed while it was resuming.
+	 * The content is the raw bytes of the file and the content length counts bytes. The integrity value is
+	 * calculated over the bytes (ClientServerUtility.getIntegrityCheckValue(byte[], int, String)).
+	 * 
+	 * fileName - The name of the requested file
+	 * range - The "Range" header field of the request: <offset>-<length> in bytes
+	 * integrityHeader - The "Integrity" header field of the response. Empty for the 16 bit checksum.
+	 * client - IP address of the client. The datagram is sized for the path to it.
+	 * @return: Return the response in byte form
+	 */
+	public static byte[] generateRangeResponseMessage(String fileName, String range, String integrityHeader, InetAddress client, ClientServerUtility utility) throws Exception {
+		String[] offsetAndLength = range.split("-");
+		long offset = Long.parseLong(offsetAndLength[0]);
+		//Range is limited to what fits in one datagram without IP fragmentation
+		int length = Math.min(Integer.parseInt(offsetAndLength[1]), utility.getMaxPayloadSize(client) - ClientServerUtility.RESPONSE_HEADER_ALLOWANCE);
+		FileChannel fileChannel = FileChannel.open(Paths.get(FILE_PATH+fileName), StandardOpenOption.READ);
+		try {
+			long fileSize = fileChannel.size();
+			ByteBuffer rangeBytes = ByteBuffer.allocate((int)Math.max(0, Math.min(length, fileSize-offset)));//Bytes past the end of file are not sent
+			while(rangeBytes.hasRemaining()) {
+				if(fileChannel.read(rangeBytes, offset+rangeBytes.position()) < 0)
+					break;//End of file reached
+			}
+			String headers = integrityHeader+"Range: "+offset+"-"+rangeBytes.position()+"/"+fileSize+"\r\n"+"Validator: "+getValidator(fileName)+"\r\n";
+			ByteArrayOutputStream response = new ByteArrayOutputStream(ClientServerUtility.RESPONSE_HEADER_ALLOWANCE + rangeBytes.position());
+			response.write(("ENTS/1.0 Response\r\n0\r\n"+headers+rangeBytes.position()+"\r\n").getBytes(StandardCharsets.US_ASCII));//The header lines are ASCII
+			response.write(rangeBytes.array(), 0, rangeBytes.position());
+			String integrityAlgorithm = utility.getHeaderValue(headers.split("\r\n"), 0, "Integrity");//null for the 16 bit checksum
+			String integrityValueToSend = utility.getIntegrityCheckValue(response.toByteArray(), response.size(), integrityAlgorithm);
+			response.write((integrityValueToSend+"\r\n").getBytes(StandardCharsets.US_ASCII));
+			return response.toByteArray();
+		}
+		finally {
+			fileChannel.close();
+		}
+	}//end of generateRangeResponseMessage()
+	
+	/*
+	 * String generateConditionalResponseMessage(String fileName, String ifNoneMatch, ClientServerUtility utility)
+	 * This class generates the response for a conditional request. If the validator of the client's cached copy is
+	 * still the validator of the file, response code 5 (not modified) is sent without reading the file.
+	 * Otherwise the whole file is sent. Both carry the current validator in the "Validator" header field.
+	 * 
+	 * fileName - The name of the requested file
+	 * ifNoneMatch - The "If-None-Match" header field of the request. "0" when the client has no cached copy.
+	 * integrityHeader - The "Integrity" header field of the response. Empty for the 16 bit checksum.
+	 * @return: Return the response which has to be sent to the client
+	 */
+	public static String generateConditionalResponseMessage(String fileName, String ifNoneMatch, String integrityHeader, ClientServerUtility utility) throws Exception {
+		String validator = getValidator(fileName);
+		String headers = integrityHeader+"Validator: "+validator+"\r\n";
+		if(ifNoneMatch.equals(validator))
+			return generateResponseMessage(5, headers, "", utility);//Not modified. The client shows its cached copy.
+		return generateResponseMessage(0, headers, fileRead(fileName, utility), utility);
+	}//end of generateConditionalResponseMessage()
+	
+	/*
+	 * String getValidator(String fileName)
+	 * This class generates the validator of a file from its last modified time and size.
+	 * Only the file attributes are read, not the content. The validator always contains a "-".
+	 * 
+	 * fileName - The name of the requested file
+	 * @return: <last modified time in hex>-<size in hex>
+	 */
+	public static String getValidator(String fileName) {
+		File file = new File(FILE_PATH+fileName);
+		return Long.toHexString(file.lastModified())+"-"+Long.toHexString(file.length());
+	}//end of getValidator()
+	
+	/*
+	 * handleBatchRequest(String receivedDataString, String[] splitRequest, ClientServerUtility utility, DatagramSocket serverSocket, DatagramPacket receivedData, RequestTrace trace)
+	 * This class answers a batch request. Every requested file gets its own sequenced datagrams with a per-file
+	 * response code (0, 2 or 3). If the batch request itself is wrong (codes 1, 2 and 4), a single normal response is sent.
+	 * A file name followed by ";" and ranges (<offset>-<length> in characters, separated by ",") is only sent in
+	 * those ranges. The client asks for the ranges it is missing after some datagrams were lost.
+	 * 
+	 * receivedDataString - Received batch request
+	 * splitRequest - The batch request split with CRLF as delimiter
+	 * serverSocket - The socket information of the server
+	 * receivedData - DatagramPacket object of the received request. Used to get the IP and port of the client.
+	 * trace - Records the end of every stage of the request
+	 */
+	public static void handleBatchRequest(String receivedDataString, String[] splitRequest, ClientServerUtility utility, DatagramSocket serverSocket, DatagramPacket receivedData, RequestTrace trace) throws Exception {
+		int responseCode = generateBatchResponseCode(receivedDataString, utility, splitRequest);//Response code of the batch request as a whole
+		trace.mark(RequestTrace.CODE);
+		String integrityAlgorithm = utility.getHeaderValue(splitRequest, 2, "Integrity");//Integrity algorithm chosen by the client. null for ENTS/1.0 peers.
+		//The batch response is protected with the same integrity algorithm as the batch request
+		String integrityHeader = (integrityAlgorithm != null && utility.isIntegrityAlgorithmSupported(integrityAlgorithm)) ? "Integrity: "+integrityAlgorithm+"\r\n" : "";
+		if(responseCode != 0) {
+			//The batch cannot be served. Send a single response with the error code.
+			String responseToBeSent = generateResponseMessage(responseCode, integrityHeader, "", utility);
+			System.out.printf("\n\nSent response : \n%s", responseToBeSent);
+			byte[] responseToBeSentInBytes = utility.messageInBytes(responseToBeSent);
+			serverSocket.send(new DatagramPacket(responseToBeSentInBytes, responseToBeSentInBytes.length, receivedData.getAddress(), receivedData.getPort()));
+			trace.mark(RequestTrace.SEND);
+			trace.finish("batch", responseCode);
+			return;
+		}
+		int totalFiles = Integer.parseInt(splitRequest[1]);//The 2nd line of the batch request is the number of files
+		int firstFile = 2 + utility.getHeaderCount(splitRequest, 2);//File names follow the optional header fields
+		//Split every file into pieces which fit in one datagram without IP fragmentation
+		List<String[]> pieces = new ArrayList<String[]>();//File name, response code, offset, file length and content of every datagram
+		for(int i=0; i<totalFiles; i++) {
+			String[] nameAndRanges = splitRequest[firstFile+i].split(";", 2);//The file name, then the missing ranges if only a part of the file is needed
+			String fileName = nameAndRanges[0];
+			int fileResponseCode = generateFileResponseCode(fileName, utility);
+			if(fileResponseCode == 0 && nameAndRanges.length > 1 && !nameAndRanges[1].matches("^[0-9]{1,9}-[0-9]{1,9}(,[0-9]{1,9}-[0-9]{1,9})*$"))
+				fileResponseCode = 2;//Malformed ranges
+			String fileContent = (fileResponseCode == 0) ? fileRead(fileName, utility) : "";//Read the content only if the file can be served
+			List<int[]> ranges = new ArrayList<int[]>();//Start and end of the parts of the file which are sent, in characters
+			if(fileResponseCode == 0 && nameAndRanges.length > 1) {
+				for(String range : nameAndRanges[1].split(",")) {
+					String[] offsetAndLength = range.split("-");
+					int start = Math.min(Integer.parseInt(offsetAndLength[0]), fileContent.length());
+					ranges.add(new int[] {start, (int)Math.min((long)start + Integer.parseInt(offsetAndLength[1]), fileContent.length())});
+				}
+			}
+			else {
+				ranges.add(new int[] {0, fileContent.length()});//The whole file
+			}
+			int pieceSize = utility.getMaxPayloadSize(receivedData.getAddress()) - ClientServerUtility.RESPONSE_HEADER_ALLOWANCE - fileName.getBytes().length;//In bytes. Sized for the path to the client.
+			for(int[] range : ranges) {
+				int offset = range[0];
+				do {
+					int pieceEnd = getPieceEnd(fileContent, offset, range[1], pieceSize);
+					String piece = fileContent.substring(offset, pieceEnd);
+					pieces.add(new String[] {fileName, String.valueOf(fileResponseCode), String.valueOf(offset), String.valueOf(fileContent.length()), piece});
+					offset = pieceEnd;
+				} while(offset < range[1]);//An empty file or an error is sent as one datagram
+			}
+		}
+		trace.mark(RequestTrace.READ);
+		for(int seq=1; seq<=pieces.size(); seq++) {
+			String[] piece = pieces.get(seq-1);
+			String responseToBeSent = generateBatchResponseMessage(seq, pieces.size(), piece[0], Integer.parseInt(piece[1]), integrityHeader, Integer.parseInt(piece[2]), Integer.parseInt(piece[3]), piece[4], utility);
+			System.out.printf("\n\nSent response : \n%s", responseToBeSent);
+			byte[] responseToBeSentInBytes = utility.messageInBytes(responseToBeSent);
+			serverSocket.send(new DatagramPacket(responseToBeSentInBytes, responseToBeSentInBytes.length, receivedData.getAddress(), receivedData.getPort()));
+		}
+		trace.mark(RequestTrace.SEND);//Assembling, encoding and sending the datagrams are interleaved, so they are counted as send
+		trace.finish("batch of " + totalFiles + " files", responseCode);
+	}//end of handleBatchRequest()
+	
+	/*
+	 * int getPieceEnd(String fileContent, int start, int rangeEnd, int pieceSize)
+	 * This class finds where a piece of a batch response ends. The offsets of the pieces count characters, but a
+	 * character can take several bytes in the datagram, so the piece is cut where its bytes fill the piece size.
+	 * A piece never ends between the two chars of a surrogate pair.
+	 * 
+	 * fileContent - The content of the file
+	 * start - Offset of the piece in characters
+	 * rangeEnd - End of the range the piece belongs to. The piece does not go beyond it.
+	 * pieceSize - Largest number of bytes of the piece
+	 * @return: Offset of the first character after the piece
+	 */
+	public static int getPieceEnd(String fileContent, int start, int rangeEnd, int pieceSize) {
+		int end = Math.min(start + pieceSize, rangeEnd);//Every character takes at least one byte
+		while(true) {
+			if(end < rangeEnd && end-1 > start && Character.isHighSurrogate(fileContent.charAt(end-1)))
+				end--;//Keep the surrogate pair together
+			int excess = fileContent.substring(start, end).getBytes().length - pieceSize;
+			if(excess <= 0 || end-1 <= start)
+				return end;
+			end = end - Math.max(1, excess/4);//A character takes at most 4 bytes
+		}
+	}//end of getPieceEnd()
+	
+	/*
+	 * int generateBatchResponseCode(String receivedDataString, ClientServerUtility utility, String[] splitRequest)
+	 * This class generates the response code of a batch request as a whole. Only 0, 1, 2 and 4 are possible here.
+	 * 
+	 * receivedDataString - Received batch request
+	 * splitRequest - The batch request split with CRLF as delimiter
+	 * @return: Response code
+	 */
+	public static int generateBatchResponseCode(String receivedDataString, ClientServerUtility utility, String[] splitRequest) {
+		if(splitRequest.length < 4)
+			return 2;//Malformed request. Request line, file count, at least one file name and integrity value are required.
+		boolean requestIntegrityMatches = utility.isIntegrityValueOfMessageCorrect(receivedDataString, "batch request");
+		if(!requestIntegrityMatches && !utility.isIntegrityAlgorithmSupported(utility.getHeaderValue(splitRequest, 2, "Integrity")))
+			return 2;//Malformed request. The integrity algorithm is not known.
+		if(!requestIntegrityMatches)
+			return 1;//Integrity check failure
+		String[] firstline = splitRequest[0].split("/");//split the first line to get version number
+		if(firstline.length < 2 || !firstline[1].startsWith("1.0"))
+			return 4;//Wrong protocol version
+		if(!firstline[0].equals("ENTS") || !firstline[1].equals("1.0 BatchRequest") || !splitRequest[1].matches("^[0-9]{1,9}$")
+				|| Integer.parseInt(splitRequest[1]) != splitRequest.length-3-utility.getHeaderCount(splitRequest, 2))
+			return 2;//Malformed request. The file count must match the number of file names.
+		return 0;
+	}//end of generateBatchResponseCode()
+	
+	/*
+	 * int generateFileResponseCode(String fileName, ClientServerUtility utility)
+	 * This class generates the response code of a single file in a batch request.
+	 * 
+	 * fileName - The name of the requested file
+	 * @return: 0 if the file can be sent, 2 if the file name is malformed, 3 if the file does not exist
+	 */
+	public static int generateFileResponseCode(String fileName, ClientServerUtility utility) throws Exception {
+		if(!utility.isFileNameSyntaxCorrect(fileName, "response"))
+			return 2;//Malformed file name
+		if(!isInCatalog(fileName) || (!new File(FILE_PATH+fileName).isFile()))
+			return 3;//Non-existent file
+		return 0;
+	}//end of generateFileResponseCode()
+	
+	/*
+	 * String generateBatchResponseMessage(int seq, int total, String fileName, int responseCode, String integrityHeader, int offset, int fileLength, String piece, ClientServerUtility utility)
+	 * This class generates one datagram of a batch response. A file larger than one datagram is sent in several pieces,
+	 * each with the offset of the piece and the length of the whole file. Each datagram carries its own integrity value.
+	 * The "Integrity" header field follows the response code, like in a normal response.
+	 * 
+	 * seq - Sequence number of this datagram (1 to total)
+	 * total - Number of datagrams in the batch response
+	 * fileName - The file this datagram answers
+	 * responseCode - The response code of this file
+	 * integrityHeader - The "Integrity" header field of the batch response. Empty for the 16 bit checksum.
+	 * offset - Position of the piece in the file content
+	 * fileLength - Length of the whole file content
+	 * piece - The piece of the file content. Empty when response code is not 0.
+	 * @return: Return the batch response datagram which has to be sent to the client
+	 */
+	public static String generateBatchResponseMessage(int seq, int total, String fileName, int responseCode, String integrityHeader, int offset, int fileLength, String piece, ClientServerUtility utility) {
+		String responseToBeSent = "ENTS/1.0 BatchResponse\r\n"+seq+"\r\n"+total+"\r\n"+fileName+"\r\n"+responseCode+"\r\n"+integrityHeader+offset+"/"+fileLength+"\r\n"+piece.length()+"\r\n"+piece;
+		String integrityAlgorithm = utility.getHeaderValue(integrityHeader.split("\r\n"), 0, "Integrity");//null for the 16 bit checksum
+		String integrityValueToSend = utility.getIntegrityCheckValue(responseToBeSent, integrityAlgorithm);//Calculate the integrity check value of this datagram
+		return responseToBeSent+integrityValueToSend+"\r\n";
+	}//end of generateBatchResponseMessage()
+	
+	/*
+	 * boolean isInCatalog(String fileName)
+	 * @return: true if the file is one of the files which can be requested
+	 */
+	public static boolean isInCatalog(String fileName) {
+		for(String name : CATALOG) {
+			if(name.equals(fileName))
+				return true;
+		}
+		return false;
+	}//end of isInCatalog()
+	
 	/*
 	 * String fileRead(String filename, ClientServerUtility utility)
 	 * This class reads the contents of the requested file. If the file is not present, it returns the appropriate string
@@ -162,7 +566,7 @@ public class Server {
 		FileReader fr = null;//FileReader object
 		try {
 			//Assign the request file to the FileReader object
-			fr = new FileReader("file path"+fileName);
+			fr = new FileReader(FILE_PATH+fileName);
 		}
 		catch (FileNotFoundException e) {
 			//If the requested file was not found
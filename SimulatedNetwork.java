@@ -0,0 +1,308 @@
+package client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * class SimulatedNetwork
+ * An in-process network for reliability and performance tests. Its sockets are used instead of DatagramSocket
+ * by setting Client.socketFactory and Server.socketFactory, so that client and server can run in one JVM
+ * without using the real network.
+ * Every packet goes through the impairments of the network: loss, duplication, reordering, latency with jitter
+ * and a bandwidth limit. All the random decisions come from one seeded Random and are taken in the order the
+ * packets are sent, so a scenario gives the same losses every time it is run with the same seed. Arrival times
+ * start from the real time a packet is sent, so the arrival order is only repeated exactly when the packets are
+ * spaced by the link (bandwidth limit) or by the protocol rather than by thread scheduling.
+ * Times are in simulated ms, also the socket timeouts. timeScale converts them to real time, so that the
+ * timeouts of 1s to 8s of the client can be tested in a few ms.
+ */
+public class SimulatedNetwork {
+	static final int FIRST_EPHEMERAL_PORT = 49152; //Ports given to sockets opened without a port
+
+	private final Random random; //Source of all the random decisions
+	private final Map<Integer, SimulatedSocket> sockets = new ConcurrentHashMap<Integer, SimulatedSocket>(); //Open sockets, by port
+	private final long startTime = System.nanoTime(); //Real time when the network was created
+	private int nextPort = FIRST_EPHEMERAL_PORT; //Port of the next socket opened without a port
+	private long sequence = 0; //Order of the delivered packets. Keeps packets due at the same time in order.
+	private long linkFreeAt = 0; //Real time when the link has sent the packets before. Used for the bandwidth limit.
+
+	private double timeScale = 1; //Real time of one simulated ms, in ms
+	private double lossRate = 0; //Probability that a packet is lost
+	private double duplicateRate = 0; //Probability that a packet is delivered twice
+	private double reorderRate = 0; //Probability that a packet is held back, so that later packets overtake it
+	private long reorderDelay = 0; //Time in ms a reordered packet is held back
+	private long latency = 0; //One-way delay of every packet in ms
+	private long jitter = 0; //Largest random delay in ms added to the latency
+	private long bandwidth = 0; //Bytes per second the link can send. 0 for no limit.
+
+	private long packetsSent = 0, packetsLost = 0, packetsDuplicated = 0, packetsUnreachable = 0, packetsDelivered = 0, bytesDelivered = 0; //Statistics
+	private final Map<Integer, Long> packetsSentToPort = new HashMap<Integer, Long>(); //Number of packets sent to every port
+
+	public SimulatedNetwork(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/*
+	 * The impairments. Each returns the network, so that a scenario can be set in one statement.
+	 */
+	public SimulatedNetwork setTimeScale(double timeScale) { this.timeScale = timeScale; return this; }
+	public SimulatedNetwork setLossRate(double lossRate) { this.lossRate = lossRate; return this; }
+	public SimulatedNetwork setDuplicateRate(double duplicateRate) { this.duplicateRate = duplicateRate; return this; }
+	public SimulatedNetwork setReordering(double reorderRate, long reorderDelay) { this.reorderRate = reorderRate; this.reorderDelay = reorderDelay; return this; }
+	public SimulatedNetwork setLatency(long latency, long jitter) { this.latency = latency; this.jitter = jitter; return this; }
+	public SimulatedNetwork setBandwidth(long bandwidth) { this.bandwidth = bandwidth; return this; }
+
+	/*
+	 * DatagramSocket open(int port)
+	 * Opens a socket bound to the given port of the network.
+	 *
+	 * port - The port. 0 for the next free ephemeral port.
+	 * @return: The socket
+	 */
+	public synchronized DatagramSocket open(int port) throws SocketException {
+		if(0 == port) {
+			while(sockets.containsKey(nextPort))
+				nextPort++;
+			port = nextPort++;
+		}
+		if(sockets.containsKey(port))
+			throw new SocketException("Port " + port + " is already in use");
+		SimulatedSocket socket = new SimulatedSocket(this, port);
+		sockets.put(port, socket);
+		return socket;
+	}//end of open()
+
+	/*
+	 * DatagramSocket open()
+	 * Opens a socket bound to the next free ephemeral port, like new DatagramSocket().
+	 */
+	public DatagramSocket open() throws SocketException {
+		return open(0);
+	}
+
+	/*
+	 * transmit(SimulatedSocket source, DatagramPacket packet)
+	 * Sends a packet through the impairments to the socket bound to the destination port of the packet.
+	 * The packet is lost if no socket is bound to that port when it is sent.
+	 *
+	 * source - The sending socket
+	 * packet - The packet. Only its data and port are used, as all the sockets are on one host.
+	 */
+	void transmit(SimulatedSocket source, DatagramPacket packet) {
+		byte[] data = Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset()+packet.getLength());
+		int port = packet.getPort();
+		SimulatedSocket destination = sockets.get(port);
+		Delivery[] deliveries;
+		synchronized(this) {
+			long now = System.nanoTime();
+			packetsSent++;
+			packetsSentToPort.merge(port, 1L, Long::sum);
+			if(random.nextDouble() < lossRate) {
+				packetsLost++;
+				return;
+			}
+			deliveries = new Delivery[(random.nextDouble() < duplicateRate) ? 2 : 1];
+			if(deliveries.length > 1)
+				packetsDuplicated++;
+			//The link sends one packet after the other. A packet waits until the packets before it have been sent.
+			long transmissionTime = (bandwidth > 0) ? toRealNanos(data.length*1000.0/bandwidth) : 0;
+			linkFreeAt = Math.max(now, linkFreeAt) + transmissionTime;
+			for(int i=0; i<deliveries.length; i++) {
+				long delay = latency + ((jitter > 0) ? (long)(random.nextDouble()*(jitter+1)) : 0);
+				if(random.nextDouble() < reorderRate)
+					delay = delay + reorderDelay;//Held back. Packets sent later overtake it.
+				deliveries[i] = new Delivery(data, source.port, linkFreeAt + toRealNanos(delay), sequence++);
+			}
+			if(null == destination) {
+				packetsUnreachable = packetsUnreachable + deliveries.length;
+				return;
+			}
+		}
+		//Delivered without holding the lock of the network, as a receiving socket holds its own lock while it counts the delivery
+		for(Delivery delivery : deliveries)
+			destination.deliver(delivery);
+	}//end of transmit()
+
+	/*
+	 * long toRealNanos(double simulatedMillis)
+	 * @return: The real time in ns of a simulated time in ms
+	 */
+	long toRealNanos(double simulatedMillis) {
+		return (long)(simulatedMillis*timeScale*1000000);
+	}
+
+	/*
+	 * @return: Simulated time in ms since the network was created. Used to measure the completion time of a scenario.
+	 */
+	public double getTime() {
+		return (System.nanoTime()-startTime)/1000000.0/timeScale;
+	}
+
+	void close(SimulatedSocket socket) {
+		sockets.remove(socket.port, socket);
+	}
+
+	/*
+	 * Statistics of the network
+	 */
+	public synchronized long getPacketsSent() { return packetsSent; }
+	public synchronized long getPacketsLost() { return packetsLost; }
+	public synchronized long getPacketsDuplicated() { return packetsDuplicated; }
+	public synchronized long getPacketsUnreachable() { return packetsUnreachable; }
+	public synchronized long getPacketsDelivered() { return packetsDelivered; }
+	public synchronized long getBytesDelivered() { return bytesDelivered; }
+
+	/*
+	 * @return: Number of packets sent to the port. Sent to the server port, these are the requests including their retransmissions.
+	 */
+	public synchronized long getPacketsSentTo(int port) {
+		return packetsSentToPort.getOrDefault(port, 0L);
+	}
+
+	synchronized void countDelivery(int length) {
+		packetsDelivered++;
+		bytesDelivered = bytesDelivered + length;
+	}
+
+	/*
+	 * class Delivery
+	 * A packet on its way to a socket.
+	 */
+	static class Delivery implements Comparable<Delivery> {
+		final byte[] data; //The bytes of the packet
+		final int sourcePort; //Port of the sending socket
+		final long deliverAt; //Real time when the packet arrives
+		final long sequence; //Order of packets arriving at the same time
+
+		Delivery(byte[] data, int sourcePort, long deliverAt, long sequence) {
+			this.data = data;
+			this.sourcePort = sourcePort;
+			this.deliverAt = deliverAt;
+			this.sequence = sequence;
+		}
+
+		public int compareTo(Delivery other) {
+			if(deliverAt != other.deliverAt)
+				return (deliverAt - other.deliverAt > 0) ? 1 : -1;
+			return Long.compare(sequence, other.sequence);
+		}
+	}//end of class Delivery
+
+	/*
+	 * class SimulatedSocket
+	 * A socket of the simulated network. It only overrides what Client and Server use: send(), receive(),
+	 * the receive timeout, the local port and close().
+	 */
+	static class SimulatedSocket extends DatagramSocket {
+		final SimulatedNetwork network; //The network the socket is bound to
+		final int port; //Port of the socket
+		private final PriorityQueue<Delivery> arrivals = new PriorityQueue<Delivery>(); //Packets on their way to the socket, first arrival first
+		private int timeout = 0; //Receive timeout in simulated ms. 0 for no timeout.
+		private boolean closed = false;
+
+		SimulatedSocket(SimulatedNetwork network, int port) throws SocketException {
+			super((SocketAddress) null);//An unbound socket. No real port is used.
+			this.network = network;
+			this.port = port;
+		}
+
+		@Override
+		public void send(DatagramPacket packet) throws IOException {
+			if(isClosed())
+				throw new SocketException("Socket is closed");
+			network.transmit(this, packet);
+		}
+
+		/*
+		 * receive(DatagramPacket packet)
+		 * Waits until the next packet has arrived, like DatagramSocket.receive(). The data is copied into the
+		 * buffer of the packet, and the length, address and port of the packet are set.
+		 */
+		@Override
+		public synchronized void receive(DatagramPacket packet) throws IOException {
+			long deadline = (timeout > 0) ? System.nanoTime() + network.toRealNanos(timeout) : Long.MAX_VALUE;
+			while(true) {
+				if(closed)
+					throw new SocketException("Socket is closed");
+				long now = System.nanoTime();
+				Delivery next = arrivals.peek();
+				if(null != next && now - next.deliverAt >= 0) {
+					arrivals.poll();
+					int length = Math.min(next.data.length, packet.getData().length - packet.getOffset());//Like UDP, the rest of a too long packet is lost
+					System.arraycopy(next.data, 0, packet.getData(), packet.getOffset(), length);
+					packet.setLength(length);
+					packet.setAddress(InetAddress.getLoopbackAddress());
+					packet.setPort(next.sourcePort);
+					network.countDelivery(length);
+					return;
+				}
+				if(deadline != Long.MAX_VALUE && now - deadline >= 0)
+					throw new SocketTimeoutException("Receive timed out");
+				long wakeUp = (null == next) ? deadline : Math.min(deadline, next.deliverAt);
+				try {
+					if(wakeUp == Long.MAX_VALUE)
+						wait();
+					else
+						TimeUnit.NANOSECONDS.timedWait(this, wakeUp - now);
+				}
+				catch(InterruptedException e) {
+					throw new InterruptedIOException("Receive interrupted");
+				}
+			}
+		}//end of receive()
+
+		synchronized void deliver(Delivery delivery) {
+			if(closed)
+				return;
+			arrivals.add(delivery);
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void setSoTimeout(int timeout) {
+			this.timeout = timeout;
+		}
+
+		@Override
+		public synchronized int getSoTimeout() {
+			return timeout;
+		}
+
+		@Override
+		public int getLocalPort() {
+			return port;
+		}
+
+		@Override
+		public synchronized boolean isClosed() {
+			return closed;
+		}
+
+		@Override
+		public void close() {
+			synchronized(this) {
+				if(closed)
+					return;
+				closed = true;
+				arrivals.clear();
+				notifyAll();
+			}
+			network.close(this);
+			super.close();
+		}
+	}//end of class SimulatedSocket
+
+}//end of class SimulatedNetwork
@@ -0,0 +1,253 @@
+package client;
+
+import static org.junit.Assert.*;
+import java.io.File;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import server.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+ * class SimulatedNetworkTest
+ * Tests of the simulated network, and scenarios which measure how the client retransmits over an impaired network.
+ * The scenarios print their completion time, number of retransmissions and goodput.
+ */
+public class SimulatedNetworkTest {
+
+	static final int SERVER_PORT = 1027; //Port the client sends its requests to
+	static final String FILE_CONTENT = "The contents of the requested file.\r\nIt has two lines."; //Content sent by the responder
+	static final String SERVER_FILE = "file_A.txt"; //File of the catalog of the server downloaded by the server scenario
+	ClientServerUtility utility;
+	DatagramSocket responderSocket;
+	volatile DatagramSocket serverSocket; //Socket of the server started by the server scenario. Set by the server thread.
+	List<File> createdFiles = new ArrayList<File>(); //Files of the server created by the test, removed after it
+	List<String> filesBeforeServer = null; //Files in the folder of the snapshot before the server was started. null if it was not started.
+
+	/*
+	 * Create new ClientServerUtility object before every test method
+	 */
+	@Before
+	public void setUp() throws Exception {
+		utility = new ClientServerUtility();
+	}
+
+	/*
+	 * Use UDP sockets again after every test method
+	 */
+	@After
+	public void tearDown() throws Exception {
+		Client.socketFactory = null;
+		Server.socketFactory = null;
+		if(null != responderSocket)
+			responderSocket.close();
+		Server.stop();//Also stops the snapshot refresher, so that it does not save the snapshot again after it is removed
+		for(File file : createdFiles)
+			file.delete();
+		if(null != filesBeforeServer) {
+			File folder = Server.SNAPSHOT_FILE.getAbsoluteFile().getParentFile();
+			for(String name : folder.list()) {
+				if(name.startsWith(Server.SNAPSHOT_FILE.getName()) && !filesBeforeServer.contains(name))
+					new File(folder, name).delete();//A generation of the snapshot saved by the server
+			}
+		}
+	}
+
+	/*
+	 * sameSeedShouldGiveSameDeliveries()
+	 * This test checks that a network with loss, duplication and reordering delivers the same packets in the same
+	 * order every time it is created with the same seed. The packets are spaced by the bandwidth limit, so that their
+	 * arrival times do not depend on how fast the test sends them.
+	 */
+	@Test
+	public void sameSeedShouldGiveSameDeliveries() throws Exception {
+		List<Integer> firstRun = sendNumberedPackets(new SimulatedNetwork(42).setLossRate(0.2).setDuplicateRate(0.1).setReordering(0.2, 50).setLatency(5, 0).setBandwidth(2000));
+		List<Integer> secondRun = sendNumberedPackets(new SimulatedNetwork(42).setLossRate(0.2).setDuplicateRate(0.1).setReordering(0.2, 50).setLatency(5, 0).setBandwidth(2000));
+		assertEquals(firstRun, secondRun);
+		assertTrue(firstRun.size() < 200);//Lost packets
+		assertNotEquals(new ArrayList<Integer>(new TreeSet<Integer>(firstRun)), firstRun);//Reordered or duplicated packets
+	}//end of sameSeedShouldGiveSameDeliveries()
+
+	/*
+	 * receiveShouldTimeOut()
+	 * This test checks that the receive timeout is in simulated ms.
+	 */
+	@Test(expected = SocketTimeoutException.class)
+	public void receiveShouldTimeOut() throws Exception {
+		SimulatedNetwork network = new SimulatedNetwork(1).setTimeScale(0.01);
+		DatagramSocket socket = network.open();
+		socket.setSoTimeout(1000);
+		long start = System.nanoTime();
+		try {
+			socket.receive(new DatagramPacket(new byte[16], 16));
+		}
+		finally {
+			assertTrue(System.nanoTime() - start < 1000000000L);//Scaled to 10ms
+			socket.close();
+		}
+	}//end of receiveShouldTimeOut()
+
+	/*
+	 * lossyNetworkScenarioShouldRetransmit()
+	 * This scenario downloads a file 20 times over a network which loses 10% of the packets. Every download has to
+	 * complete with retransmissions, and the same seed has to give the same number of retransmissions.
+	 */
+	@Test
+	public void lossyNetworkScenarioShouldRetransmit() throws Exception {
+		long firstRetransmissions = runDownloadScenario(new SimulatedNetwork(7).setTimeScale(0.05).setLossRate(0.1).setLatency(20, 10), 20);
+		long secondRetransmissions = runDownloadScenario(new SimulatedNetwork(7).setTimeScale(0.05).setLossRate(0.1).setLatency(20, 10), 20);
+		assertTrue(firstRetransmissions > 0);
+		assertEquals(firstRetransmissions, secondRetransmissions);
+	}//end of lossyNetworkScenarioShouldRetransmit()
+
+	/*
+	 * lossyNetworkScenarioShouldReachServer()
+	 * This scenario downloads a file of the server 20 times with Client.messageHandling() over a network which loses
+	 * 10% of the packets. The real server runs in the test. Every download has to complete with the content of the file,
+	 * and some of them only after retransmissions.
+	 */
+	@Test
+	public void lossyNetworkScenarioShouldReachServer() throws Exception {
+		SimulatedNetwork network = new SimulatedNetwork(11).setTimeScale(0.1).setLossRate(0.1).setLatency(20, 10);
+		File file = new File(Server.FILE_PATH + SERVER_FILE);
+		if(!file.isFile()) {
+			Files.write(file.toPath(), FILE_CONTENT.getBytes());
+			createdFiles.add(file);
+		}
+		StringBuilder fileContent = new StringBuilder();//The content as the server reads it, line by line
+		for(String line : Files.readAllLines(file.toPath()))
+			fileContent.append(line).append(System.getProperty("line.separator"));
+		startServer(network);
+		Client.socketFactory = network::open;
+		double startTime = network.getTime();
+		for(int i=0; i<20; i++) {
+			String receivedResponse = Client.messageHandling(SERVER_FILE, utility);
+			assertNotNull(receivedResponse);
+			assertEquals(fileContent.toString(), utility.extractContent(receivedResponse, 3, fileContent.length()));
+		}
+		long retransmissions = network.getPacketsSentTo(SERVER_PORT) - 20;
+		System.out.printf("%nScenario: 20 downloads from the server in %.0f ms, %d retransmissions, %d of %d packets lost%n",
+				network.getTime() - startTime, retransmissions, network.getPacketsLost(), network.getPacketsSent());
+		assertTrue(retransmissions > 0);
+	}//end of lossyNetworkScenarioShouldReachServer()
+	
+	/*
+	 * slowLinkScenarioShouldTakeLatencyAndTransmissionTime()
+	 * This scenario downloads a file over a link with 100ms latency and 1000 bytes/s. A download takes at least the
+	 * latency of the request and the response, plus the time to send both.
+	 */
+	@Test
+	public void slowLinkScenarioShouldTakeLatencyAndTransmissionTime() throws Exception {
+		SimulatedNetwork network = new SimulatedNetwork(3).setTimeScale(0.1).setLatency(100, 0).setBandwidth(1000);
+		assertEquals(0, runDownloadScenario(network, 1));
+		assertTrue(network.getTime() >= 200 + network.getBytesDelivered());
+	}//end of slowLinkScenarioShouldTakeLatencyAndTransmissionTime()
+
+	/*
+	 * List<Integer> sendNumberedPackets(SimulatedNetwork network)
+	 * Sends the numbers 0 to 199 in one packet each, and receives until no packet arrives for 500ms.
+	 *
+	 * @return: The numbers in the order they were received
+	 */
+	List<Integer> sendNumberedPackets(SimulatedNetwork network) throws Exception {
+		DatagramSocket sender = network.open();
+		DatagramSocket receiver = network.open();
+		for(int i=0; i<200; i++) {
+			byte[] number = utility.messageInBytes(Integer.toString(i));
+			sender.send(new DatagramPacket(number, number.length, InetAddress.getLoopbackAddress(), receiver.getLocalPort()));
+		}
+		List<Integer> received = new ArrayList<Integer>();
+		receiver.setSoTimeout(500);
+		byte[] buffer = new byte[16];
+		try {
+			while(true) {
+				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				receiver.receive(packet);
+				received.add(Integer.parseInt(new String(buffer, 0, packet.getLength())));
+			}
+		}
+		catch(SocketTimeoutException e) {
+			//All the packets which were not lost have arrived
+		}
+		sender.close();
+		receiver.close();
+		return received;
+	}//end of sendNumberedPackets()
+
+	/*
+	 * long runDownloadScenario(SimulatedNetwork network, int downloads)
+	 * Downloads the file of the responder the given number of times with Client.exchangeWithRetransmit(),
+	 * and prints the completion time, retransmissions and goodput of the scenario.
+	 *
+	 * @return: Number of retransmitted requests
+	 */
+	long runDownloadScenario(SimulatedNetwork network, int downloads) throws Exception {
+		startResponder(network);
+		Client.socketFactory = network::open;
+		long contentBytes = 0;
+		double startTime = network.getTime();
+		for(int i=0; i<downloads; i++) {
+			String receivedResponse = Client.exchangeWithRetransmit(timeout -> Client.generateRequestMessage("file_A.txt", timeout, utility), utility);
+			assertNotNull(receivedResponse);
+			assertEquals(FILE_CONTENT, utility.extractContent(receivedResponse, 3, FILE_CONTENT.length()));
+			contentBytes = contentBytes + FILE_CONTENT.length();
+		}
+		double completionTime = network.getTime() - startTime;
+		long retransmissions = network.getPacketsSentTo(SERVER_PORT) - downloads;
+		System.out.printf("%nScenario: %d downloads in %.0f ms, %d retransmissions, %d of %d packets lost, goodput %.0f bytes/s%n",
+				downloads, completionTime, retransmissions, network.getPacketsLost(), network.getPacketsSent(), contentBytes*1000/completionTime);
+		responderSocket.close();
+		Client.socketFactory = null;
+		return retransmissions;
+	}//end of runDownloadScenario()
+
+	/*
+	 * startServer(SimulatedNetwork network)
+	 * Starts Server.main() in a thread, with its socket on the server port of the network, and waits until its socket is open.
+	 * tearDown() stops it with Server.stop().
+	 */
+	void startServer(SimulatedNetwork network) throws Exception {
+		filesBeforeServer = Arrays.asList(Server.SNAPSHOT_FILE.getAbsoluteFile().getParentFile().list());
+		Server.socketFactory = () -> serverSocket = network.open(SERVER_PORT);
+		Thread server = new Thread(() -> Server.main(new String[0]), "server");
+		server.setDaemon(true);
+		server.start();
+		while(null == serverSocket)
+			Thread.sleep(10);
+	}//end of startServer()
+	
+	/*
+	 * startResponder(SimulatedNetwork network)
+	 * Starts a thread which answers every request on the server port with FILE_CONTENT, like the server does.
+	 */
+	void startResponder(SimulatedNetwork network) throws Exception {
+		responderSocket = network.open(SERVER_PORT);
+		DatagramSocket socket = responderSocket;
+		Thread responder = new Thread(() -> {
+			byte[] buffer = new byte[ClientServerUtility.MAX_UDP_PAYLOAD];
+			try {
+				while(true) {
+					DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+					socket.receive(request);
+					String response = "ENTS/1.0 Response\r\n0\r\n" + FILE_CONTENT.length() + "\r\n" + FILE_CONTENT;
+					byte[] responseInBytes = utility.messageInBytes(response + utility.getIntegrityCheckValue(response) + "\r\n");
+					socket.send(new DatagramPacket(responseInBytes, responseInBytes.length, request.getAddress(), request.getPort()));
+				}
+			}
+			catch(Exception e) {
+				//The socket was closed at the end of the scenario
+			}
+		}, "responder");
+		responder.setDaemon(true);
+		responder.start();
+	}//end of startResponder()
+
+}//end of test class SimulatedNetworkTest